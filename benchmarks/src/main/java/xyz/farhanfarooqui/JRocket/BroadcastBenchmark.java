@@ -0,0 +1,88 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out of one event to every client of the server. The clients are connected in memory and their frames are taken
+ * off the queue as soon as they are queued, so the time is spent encoding once and queueing on every client. Broadcasts
+ * return before the fan-out is done, so the benchmarks wait for it to measure all of it.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BroadcastBenchmark {
+    @Param({"1000", "10000"})
+    public int clients;
+
+    private JRocketServer mServer;
+    private Client mSender;
+    private JSONObject mData;
+    private Client[] mClients;
+    private Frame mFrame;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        mServer = JRocketServer.listen(0, 1, Engine.NIO);
+        for (int i = 0; i < clients; i++) {
+            Client client = Client.createClient(Utils.createID(), new InMemoryConnection(mServer, true));
+            mServer.onConnect(client);
+            if (mSender == null) {
+                mSender = client;
+            }
+        }
+        mData = FrameCodecBenchmark.newData(256);
+        mClients = mServer.clients().toArray(new Client[0]);
+        mFrame = mServer.encode("message", mData);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.stop();
+    }
+
+    /**
+     * {@link JRocketServer#send(String, JSONObject)}, to every client.
+     */
+    @Benchmark
+    public int serverSend() {
+        return mServer.send("message", mData).join();
+    }
+
+    /**
+     * {@link Client#broadCast(String, JSONObject)}, to every client but the sender.
+     */
+    @Benchmark
+    public int clientBroadCast() {
+        return mSender.broadCast("message", mData).join();
+    }
+
+    /**
+     * The fan-out alone, one client after the other on the calling thread, with the frame encoded up front.
+     */
+    @Benchmark
+    public void fanOut() {
+        for (Client client : mClients) {
+            client.send(mFrame);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting objects to and from {@link JSONObject} with {@link Converter}, next to encoding the same object directly
+ * with the payload codecs.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConverterBenchmark {
+    private Message mMessage;
+    private JSONObject mJSONObject;
+    private PayloadCodec mJsonCodec;
+    private PayloadCodec mBinaryCodec;
+    private byte[] mJsonPayload;
+    private byte[] mBinaryPayload;
+
+    public static class Message {
+        long id;
+        String user;
+        String text;
+        boolean online;
+        double score;
+        List<String> tags;
+        int[] values;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        mMessage = new Message();
+        mMessage.id = 123456789L;
+        mMessage.user = "benchmark";
+        mMessage.text = "The quick brown fox jumps over the lazy dog";
+        mMessage.online = true;
+        mMessage.score = 98.6;
+        mMessage.tags = Arrays.asList("alpha", "beta", "gamma");
+        mMessage.values = new int[]{1, 2, 3, 5, 8, 13, 21, 34};
+        mJSONObject = Converter.convertObjectToJSON(mMessage);
+        mJsonCodec = new JsonPayloadCodec();
+        mBinaryCodec = new BinaryPayloadCodec();
+        mJsonPayload = mJsonCodec.encode(mMessage);
+        mBinaryPayload = mBinaryCodec.encode(mMessage);
+    }
+
+    @Benchmark
+    public JSONObject toJSON() {
+        return Converter.convertObjectToJSON(mMessage);
+    }
+
+    @Benchmark
+    public Message fromJSON() {
+        return Converter.convertJSONToObject(mJSONObject, Message.class);
+    }
+
+    @Benchmark
+    public Message roundTrip() {
+        return Converter.convertJSONToObject(Converter.convertObjectToJSON(mMessage), Message.class);
+    }
+
+    @Benchmark
+    public Message jsonCodecRoundTrip() throws IOException {
+        return mJsonCodec.decode(ByteBuffer.wrap(mJsonCodec.encode(mMessage)), Message.class);
+    }
+
+    @Benchmark
+    public Message binaryCodecRoundTrip() throws IOException {
+        return mBinaryCodec.decode(ByteBuffer.wrap(mBinaryCodec.encode(mMessage)), Message.class);
+    }
+
+    @Benchmark
+    public Message jsonCodecDecode() throws IOException {
+        return mJsonCodec.decode(ByteBuffer.wrap(mJsonPayload), Message.class);
+    }
+
+    @Benchmark
+    public Message binaryCodecDecode() throws IOException {
+        return mBinaryCodec.decode(ByteBuffer.wrap(mBinaryPayload), Message.class);
+    }
+}
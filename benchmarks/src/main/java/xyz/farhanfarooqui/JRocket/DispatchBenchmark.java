@@ -0,0 +1,125 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.farhanfarooqui.JRocket.ServerListeners.OnReceiveObjectListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up the listener of a received event on the server, by name and by announced id, and the whole way from a
+ * received frame to the listener. Listeners are inline and take the {@link Payload}, so the payload isn't decoded.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DispatchBenchmark {
+    @Param({"10", "1000"})
+    public int events;
+
+    private JRocketServer mServer;
+    private Connection mConnection;
+    private Client mClient;
+    private String mEvent;
+    private int mEventId;
+    private byte[] mPayload;
+    private byte mNameFlags;
+    private ByteBuffer mNameBody;
+    private byte mIdFlags;
+    private ByteBuffer mIdBody;
+    private Object mReceived;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        mServer = JRocketServer.listen(0, 1, Engine.NIO);
+        OnReceiveObjectListener<Payload> listener = new OnReceiveObjectListener<Payload>() {
+            @Override
+            public void onReceive(Payload data, Client client) {
+                mReceived = data;
+            }
+        };
+        for (int i = 0; i < events; i++) {
+            mServer.onReceive("event-" + i, Payload.class, listener, true);
+        }
+        // Ids are given in the order the events were registered.
+        mEventId = events / 2;
+        mEvent = "event-" + mEventId;
+
+        mConnection = new InMemoryConnection(mServer, true);
+        mClient = Client.createClient(Utils.createID(), mConnection);
+        mServer.onConnect(mClient);
+
+        mPayload = mServer.getPayloadCodec().encode(FrameCodecBenchmark.newData(64));
+        Frame frame = mServer.encode(mEvent, FrameCodecBenchmark.newData(64));
+        mNameFlags = flags(frame);
+        mNameBody = body(frame);
+        mIdFlags = flags(frame.withEventId(mEventId));
+        mIdBody = body(frame.withEventId(mEventId));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mServer.stop();
+    }
+
+    private static byte flags(Frame frame) {
+        return frame.buffer().get(FrameCodec.LENGTH_FIELD_SIZE);
+    }
+
+    private static ByteBuffer body(Frame frame) {
+        ByteBuffer bytes = ByteBuffer.allocate(frame.length());
+        frame.writeTo(bytes);
+        bytes.position(FrameCodec.LENGTH_FIELD_SIZE + FrameCodec.FLAGS_SIZE);
+        return bytes.slice();
+    }
+
+    @Benchmark
+    public Object byName() throws IOException {
+        mServer.onReceiveEvent(mEvent, ByteBuffer.wrap(mPayload), false, mClient, null);
+        return mReceived;
+    }
+
+    @Benchmark
+    public Object byId() throws IOException {
+        mServer.onReceiveEvent(mEventId, ByteBuffer.wrap(mPayload), false, mClient, null);
+        return mReceived;
+    }
+
+    /**
+     * An event nobody listens to, which is dropped before its payload is touched.
+     */
+    @Benchmark
+    public Object unknownEvent() throws IOException {
+        mServer.onReceiveEvent("unknown", ByteBuffer.wrap(mPayload), false, mClient, null);
+        return mReceived;
+    }
+
+    @Benchmark
+    public Object frameByName() throws IOException {
+        mConnection.onFrame(mNameFlags, mNameBody.duplicate());
+        return mReceived;
+    }
+
+    @Benchmark
+    public Object frameById() throws IOException {
+        mConnection.onFrame(mIdFlags, mIdBody.duplicate());
+        return mReceived;
+    }
+}
@@ -0,0 +1,110 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding an event into a frame, and decoding frames the way the receivers of both engines do, from the bytes read
+ * off the socket to the decoded payload.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FrameCodecBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int payloadSize;
+
+    @Param({"0", "256"})
+    public int compressionThreshold;
+
+    private JRocketClient mJRocket;
+    private JSONObject mData;
+    private ByteBuffer mFrames;
+    private ByteBuffer mReadBuffer;
+    private FrameDecoder mDecoder;
+    private Object mDecoded;
+
+    @Setup
+    public void setUp() throws JSONException, IOException {
+        mJRocket = JRocketClient.prepare("localhost", 0);
+        mJRocket.setCompressionThreshold(compressionThreshold);
+        mData = newData(payloadSize);
+
+        Frame frame = FrameCodec.encode("message", mData, mJRocket);
+        mFrames = ByteBuffer.allocate(frame.length());
+        frame.writeTo(mFrames);
+        mFrames.flip();
+        mReadBuffer = ByteBuffer.allocate(frame.length());
+
+        mDecoder = new FrameDecoder(new FrameDecoder.FrameListener() {
+            @Override
+            public void onFrame(byte flags, ByteBuffer body) throws IOException {
+                FrameCodec.readEvent(body);
+                if ((flags & FrameCodec.FLAG_COMPRESSED) != 0) {
+                    body = Compression.inflate(body, null, mJRocket.getCompressionStats());
+                }
+                mDecoded = mJRocket.getPayloadCodec().decode(body, JSONObject.class);
+            }
+        });
+    }
+
+    /**
+     * A JSON object with a few typical fields and a text which makes its encoded size about the given size.
+     */
+    static JSONObject newData(int size) throws JSONException {
+        JSONObject data = new JSONObject();
+        data.put("id", 123456789L);
+        data.put("user", "benchmark");
+        data.put("online", true);
+        data.put("score", 98.6);
+        char[] text = new char[Math.max(0, size - 70)];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (char) ('a' + i % 7 * 3 % 26);
+        }
+        data.put("text", new String(text));
+        return data;
+    }
+
+    @Benchmark
+    public Frame encode() throws IOException {
+        return FrameCodec.encode("message", mData, mJRocket);
+    }
+
+    @Benchmark
+    public Object decode() throws IOException {
+        mDecoder.decode(mFrames.duplicate());
+        return mDecoded;
+    }
+
+    /**
+     * Encodes, copies the frame like a socket would and decodes it again.
+     */
+    @Benchmark
+    public Object roundTrip() throws IOException {
+        Frame frame = FrameCodec.encode("message", mData, mJRocket);
+        mReadBuffer.clear();
+        frame.writeTo(mReadBuffer);
+        mReadBuffer.flip();
+        mDecoder.decode(mReadBuffer);
+        return mDecoded;
+    }
+}
@@ -0,0 +1,34 @@
+package xyz.farhanfarooqui.JRocket;
+
+/**
+ * A connection without a socket, so benchmarks measure JRocket itself instead of the network. If it drains, queued
+ * frames are taken off the queue right away, as if they were written instantly.
+ */
+
+class InMemoryConnection extends Connection {
+    private final boolean mDrain;
+
+    InMemoryConnection(JRocket JRocket, boolean drain) {
+        super(JRocket);
+        mDrain = drain;
+    }
+
+    @Override
+    void start() {
+
+    }
+
+    @Override
+    void onFrameQueued() {
+        if (mDrain) {
+            while (mQueue.poll() != null) {
+                // Written.
+            }
+        }
+    }
+
+    @Override
+    void close() {
+        mQueue.close();
+    }
+}
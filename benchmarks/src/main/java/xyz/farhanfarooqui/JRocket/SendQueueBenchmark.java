@@ -0,0 +1,92 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hand-off of frames from the threads calling send() to the thread writing them, through the {@link OutboundQueue} of a
+ * connection. The writer takes frames like the Sender of {@link Communicator} does, without writing them anywhere.
+ * <br>
+ * Senders pause while the queue holds {@link #MAX_QUEUED} frames, so a slow writer can't make the queue grow without
+ * bound, and everyone stops waiting when the measurement ends.
+ */
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SendQueueBenchmark {
+    private static final int MAX_QUEUED = 64 * 1024;
+
+    private Connection mConnection;
+    private Frame mFrame;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        JRocketClient jRocket = JRocketClient.prepare("localhost", 0);
+        mConnection = new InMemoryConnection(jRocket, false);
+        mFrame = FrameCodec.encode("message", FrameCodecBenchmark.newData(64), jRocket);
+    }
+
+    @Benchmark
+    @Group("oneSender")
+    @GroupThreads(1)
+    public void send(Control control) {
+        offer(control);
+    }
+
+    @Benchmark
+    @Group("oneSender")
+    @GroupThreads(1)
+    public Frame take(Control control) throws InterruptedException {
+        return poll(control);
+    }
+
+    @Benchmark
+    @Group("fourSenders")
+    @GroupThreads(4)
+    public void sendContended(Control control) {
+        offer(control);
+    }
+
+    @Benchmark
+    @Group("fourSenders")
+    @GroupThreads(1)
+    public Frame takeContended(Control control) throws InterruptedException {
+        return poll(control);
+    }
+
+    private void offer(Control control) {
+        while (mConnection.mQueue.size() >= MAX_QUEUED && !control.stopMeasurement) {
+            Thread.yield();
+        }
+        mConnection.send(mFrame);
+    }
+
+    private Frame poll(Control control) throws InterruptedException {
+        while (!control.stopMeasurement) {
+            Frame frame = mConnection.mQueue.poll(1, TimeUnit.MILLISECONDS);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,82 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AdmissionControlTest {
+
+    private static InetAddress address(int last) throws Exception {
+        return InetAddress.getByAddress(new byte[]{10, 0, 0, (byte) last});
+    }
+
+    /**
+     * Lets the bucket fill up, it holds one second worth of connections.
+     */
+    private static void fill() throws InterruptedException {
+        Thread.sleep(1100);
+    }
+
+    @Test
+    void unlimited() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        for (int i = 0; i < 1000; i++) {
+            assertNull(admission.admit(address(1), i));
+        }
+    }
+
+    @Test
+    void maxConnections() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.setMaxConnections(2);
+        assertNull(admission.admit(address(1), 1));
+        assertEquals(AdmissionControl.Rejection.MAX_CONNECTIONS, admission.admit(address(1), 2));
+    }
+
+    @Test
+    void tokenBucket() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.setMaxAcceptRate(4);
+        fill();
+        for (int i = 0; i < 4; i++) {
+            assertNull(admission.admit(address(i), 0));
+        }
+        assertEquals(AdmissionControl.Rejection.ACCEPT_RATE, admission.admit(address(9), 0));
+        Thread.sleep(300);
+        assertNull(admission.admit(address(9), 0));
+    }
+
+    @Test
+    void releasePerAddress() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.setMaxConnectionsPerAddress(2);
+        assertNull(admission.admit(address(1), 0));
+        assertNull(admission.admit(address(1), 0));
+        assertEquals(AdmissionControl.Rejection.CONNECTIONS_PER_ADDRESS, admission.admit(address(1), 0));
+        assertNull(admission.admit(address(2), 0));
+
+        admission.release(address(1));
+        assertNull(admission.admit(address(1), 0));
+        assertEquals(AdmissionControl.Rejection.CONNECTIONS_PER_ADDRESS, admission.admit(address(1), 0));
+    }
+
+    @Test
+    void rejectionsDontCountAgainstTheOtherLimits() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.setMaxAcceptRate(2);
+        admission.setMaxConnectionsPerAddress(1);
+        fill();
+        assertNull(admission.admit(address(1), 0));
+        // Rejected for its address, so the second token is still there
+        assertEquals(AdmissionControl.Rejection.CONNECTIONS_PER_ADDRESS, admission.admit(address(1), 0));
+        assertNull(admission.admit(address(2), 0));
+
+        // Rejected for the rate, so its address isn't counted
+        assertEquals(AdmissionControl.Rejection.ACCEPT_RATE, admission.admit(address(3), 0));
+        admission.setMaxAcceptRate(0);
+        assertNull(admission.admit(address(3), 0));
+    }
+}
@@ -0,0 +1,96 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompressionTest {
+    private static final byte[] DICTIONARY = "{\"symbol\":\"\",\"price\":,\"volume\":,\"timestamp\":}".getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] payload(int count) {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            builder.append("{\"symbol\":\"ABC\",\"price\":").append(100 + i).append(",\"volume\":").append(i * 7)
+                    .append(",\"timestamp\":").append(1700000000L + i).append('}');
+        }
+        return builder.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        CompressionStats stats = new CompressionStats();
+        byte[] payload = payload(50);
+        byte[] compressed = Compression.deflate(payload, 64, null, stats);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < payload.length);
+        assertArrayEquals(payload, toArray(Compression.inflate(ByteBuffer.wrap(compressed), null, stats)));
+        assertEquals(1, stats.getCompressedFrames());
+        assertEquals(1, stats.getDecompressedFrames());
+    }
+
+    @Test
+    void roundTripWithDictionary() throws IOException {
+        CompressionStats stats = new CompressionStats();
+        byte[] payload = payload(1);
+        byte[] plain = Compression.deflate(payload, 16, null, stats);
+        byte[] compressed = Compression.deflate(payload, 16, DICTIONARY, stats);
+        assertNotNull(compressed);
+        assertTrue(plain == null || compressed.length < plain.length);
+        assertArrayEquals(payload, toArray(Compression.inflate(ByteBuffer.wrap(compressed), DICTIONARY, stats)));
+    }
+
+    @Test
+    void largePayloadsGrowTheBuffer() throws IOException {
+        CompressionStats stats = new CompressionStats();
+        byte[] payload = new byte[256 * 1024];
+        byte[] compressed = Compression.deflate(payload, 64, null, stats);
+        assertNotNull(compressed);
+        assertArrayEquals(payload, toArray(Compression.inflate(ByteBuffer.wrap(compressed), null, stats)));
+    }
+
+    @Test
+    void skipsSmallAndIncompressiblePayloads() {
+        CompressionStats stats = new CompressionStats();
+        assertNull(Compression.deflate(payload(50), 0, null, stats));
+        assertNull(Compression.deflate(new byte[32], 64, null, stats));
+
+        byte[] random = new byte[1024];
+        new Random(1).nextBytes(random);
+        assertNull(Compression.deflate(random, 64, null, stats));
+        assertEquals(1, stats.getSkippedFrames());
+        assertEquals(0, stats.getCompressedFrames());
+    }
+
+    @Test
+    void rejectsAMissingOrDifferentDictionary() {
+        CompressionStats stats = new CompressionStats();
+        final byte[] compressed = Compression.deflate(payload(1), 16, DICTIONARY, stats);
+        assertThrows(IOException.class, () -> Compression.inflate(ByteBuffer.wrap(compressed), null, stats));
+        byte[] other = "something else entirely".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> Compression.inflate(ByteBuffer.wrap(compressed), other, stats));
+    }
+
+    @Test
+    void rejectsTruncatedPayloads() {
+        CompressionStats stats = new CompressionStats();
+        byte[] compressed = Compression.deflate(payload(50), 64, null, stats);
+        ByteBuffer truncated = ByteBuffer.wrap(compressed, 0, compressed.length / 2);
+        assertThrows(IOException.class, () -> Compression.inflate(truncated, null, stats));
+    }
+}
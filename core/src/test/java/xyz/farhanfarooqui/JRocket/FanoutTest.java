@@ -0,0 +1,113 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class FanoutTest {
+
+    /**
+     * A connection without a socket, the queued frames stay in the queue until the test polls them.
+     */
+    private static class TestConnection extends Connection {
+        TestConnection(JRocket JRocket) {
+            super(JRocket);
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void onFrameQueued() {
+        }
+
+        @Override
+        void close() {
+            closeQueue();
+        }
+    }
+
+    private JRocketServer mServer;
+    private ExecutorService mExecutor;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mServer = JRocketServer.listen(0, 1, Engine.NIO);
+        mExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        mServer.stop();
+        mExecutor.shutdown();
+        mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private ClientRegistry clients(int count) {
+        ClientRegistry clients = new ClientRegistry();
+        for (int i = 0; i < count; i++) {
+            clients.add(Client.createClient(Utils.createID(), new TestConnection(mServer)));
+        }
+        return clients;
+    }
+
+    @Test
+    void countsTheClientsExceptTheSender() throws Exception {
+        ClientRegistry clients = clients(50);
+        Fanout fanout = new Fanout(mExecutor, 4);
+        Client except = clients.snapshot()[7];
+        assertEquals(49, fanout.send(clients, new Frame("e", new byte[8]), except).get(5, TimeUnit.SECONDS).intValue());
+        assertNull(except.getConnection().mQueue.poll());
+        assertEquals(0, fanout.send(new ClientRegistry(), new Frame("e", new byte[8]), null).get().intValue());
+    }
+
+    @Test
+    void keepsTheOrderOfSuccessiveFanouts() throws Exception {
+        ClientRegistry clients = clients(20);
+        Fanout fanout = new Fanout(mExecutor, 4);
+        Frame[] frames = new Frame[100];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame("e" + i, new byte[8]);
+            fanout.send(clients, frames[i], null);
+        }
+        fanout.send(clients, new Frame("last", new byte[8]), null).get(5, TimeUnit.SECONDS);
+        for (Client client : clients.snapshot()) {
+            for (Frame frame : frames) {
+                assertSame(frame, client.getConnection().mQueue.poll());
+            }
+        }
+    }
+
+    @Test
+    void rejectedPartitionsCountAsNone() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        Fanout fanout = new Fanout(executor, 4);
+        assertEquals(0, fanout.send(clients(10), new Frame("e", new byte[8]), null).get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    @Test
+    void neverWaitsForAFullQueue() throws Exception {
+        mServer.setMaxQueueSize(1);
+        mServer.setOverflowPolicy(OverflowPolicy.BLOCK);
+        ClientRegistry clients = clients(10);
+        Client slow = clients.snapshot()[0];
+        slow.getConnection().send(new Frame("e", new byte[8]));
+        Fanout fanout = new Fanout(mExecutor, 4);
+        assertEquals(10, fanout.send(clients, new Frame("e", new byte[8]), null).get(5, TimeUnit.SECONDS).intValue());
+        assertEquals(DisconnectReason.QUEUE_OVERFLOW, slow.getDisconnectReason());
+        assertEquals(1, slow.getDroppedCount());
+        assertEquals(1, clients.snapshot()[1].getQueueSize());
+    }
+}
@@ -0,0 +1,146 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FrameDecoderTest {
+
+    /**
+     * Keeps a copy of every frame, the decoder only lends the body until the listener returns.
+     */
+    private static class Frames implements FrameDecoder.FrameListener {
+        final List<byte[]> frames = new ArrayList<>();
+
+        @Override
+        public void onFrame(byte flags, ByteBuffer body) {
+            byte[] frame = new byte[FrameCodec.FLAGS_SIZE + body.remaining()];
+            frame[0] = flags;
+            body.get(frame, FrameCodec.FLAGS_SIZE, body.remaining());
+            frames.add(frame);
+        }
+    }
+
+    private static byte[] bytes(Frame frame) {
+        ByteBuffer buffer = frame.buffer();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * The frames as the listener should see them, without the length field.
+     */
+    private static List<byte[]> expected(List<Frame> frames) {
+        List<byte[]> expected = new ArrayList<>();
+        for (Frame frame : frames) {
+            byte[] bytes = bytes(frame);
+            expected.add(Arrays.copyOfRange(bytes, FrameCodec.LENGTH_FIELD_SIZE, bytes.length));
+        }
+        return expected;
+    }
+
+    private static byte[] concat(List<Frame> frames) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (Frame frame : frames) {
+            byte[] bytes = bytes(frame);
+            stream.write(bytes, 0, bytes.length);
+        }
+        return stream.toByteArray();
+    }
+
+    private static List<Frame> frames() throws Exception {
+        JRocketClient rocket = JRocketClient.prepare("localhost", 0);
+        char[] large = new char[100 * 1024];
+        Arrays.fill(large, 'x');
+        return Arrays.asList(
+                FrameCodec.encodePing(42),
+                FrameCodec.encodeEventTable(new String[]{"chat", "move"}, 3),
+                FrameCodec.encode("chat", new JSONObject().put("text", "hello"), rocket),
+                FrameCodec.encode("big", new JSONObject().put("text", new String(large)), rocket),
+                FrameCodec.encode("chat", new JSONObject(), rocket));
+    }
+
+    private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), "frame " + i);
+        }
+    }
+
+    @Test
+    void frameByFrame() throws Exception {
+        List<Frame> frames = frames();
+        Frames listener = new Frames();
+        FrameDecoder decoder = new FrameDecoder(listener);
+        for (Frame frame : frames) {
+            decoder.decode(ByteBuffer.wrap(bytes(frame)));
+        }
+        assertFrames(expected(frames), listener.frames);
+    }
+
+    @Test
+    void mergedReads() throws Exception {
+        List<Frame> frames = frames();
+        Frames listener = new Frames();
+        new FrameDecoder(listener).decode(ByteBuffer.wrap(concat(frames)));
+        assertFrames(expected(frames), listener.frames);
+    }
+
+    @Test
+    void splitAtEveryOffset() throws Exception {
+        List<Frame> frames = frames().subList(0, 3);
+        byte[] stream = concat(frames);
+        for (int split = 1; split < stream.length; split++) {
+            Frames listener = new Frames();
+            FrameDecoder decoder = new FrameDecoder(listener);
+            decoder.decode(ByteBuffer.wrap(stream, 0, split));
+            decoder.decode(ByteBuffer.wrap(stream, split, stream.length - split));
+            assertFrames(expected(frames), listener.frames);
+        }
+    }
+
+    @Test
+    void byteByByte() throws Exception {
+        List<Frame> frames = frames();
+        byte[] stream = concat(frames);
+        Frames listener = new Frames();
+        FrameDecoder decoder = new FrameDecoder(listener);
+        for (byte b : stream) {
+            decoder.decode(ByteBuffer.wrap(new byte[]{b}));
+        }
+        assertFrames(expected(frames), listener.frames);
+    }
+
+    @Test
+    void chunksOfReadBufferSize() throws Exception {
+        List<Frame> frames = frames();
+        byte[] stream = concat(frames);
+        Frames listener = new Frames();
+        FrameDecoder decoder = new FrameDecoder(listener);
+        int chunk = 64 * 1024;
+        for (int offset = 0; offset < stream.length; offset += chunk) {
+            decoder.decode(ByteBuffer.wrap(stream, offset, Math.min(chunk, stream.length - offset)));
+        }
+        assertFrames(expected(frames), listener.frames);
+    }
+
+    @Test
+    void invalidLength() {
+        ByteBuffer empty = ByteBuffer.allocate(FrameCodec.LENGTH_FIELD_SIZE).putInt(0, 0);
+        assertThrows(IOException.class, () -> new FrameDecoder(new Frames()).decode(empty));
+
+        ByteBuffer tooLong = ByteBuffer.allocate(FrameCodec.LENGTH_FIELD_SIZE).putInt(0, FrameCodec.MAX_FRAME_LENGTH + 1);
+        assertThrows(IOException.class, () -> new FrameDecoder(new Frames()).decode(tooLong));
+    }
+}
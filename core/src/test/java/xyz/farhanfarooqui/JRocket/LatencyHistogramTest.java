@@ -0,0 +1,85 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    /**
+     * Buckets are reported by their upper bound, which is at most about 3% above the value.
+     */
+    private static void assertClose(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 30 + 1, "expected about " + expected + " but was " + actual);
+    }
+
+    @Test
+    void empty() {
+        HistogramSnapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getP99());
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(20, snapshot.getCount());
+        assertEquals(10, snapshot.getP50());
+        assertEquals(18, snapshot.getP90());
+        assertEquals(20, snapshot.getMax());
+        assertEquals(10.5, snapshot.getMean(), 1e-9);
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertClose(5000000, snapshot.getP50());
+        assertClose(9000000, snapshot.getP90());
+        assertClose(9900000, snapshot.getP99());
+        assertClose(9990000, snapshot.getP999());
+        assertClose(10000000, snapshot.getMax());
+    }
+
+    @Test
+    void outlier() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 999; i++) {
+            histogram.record(1000);
+        }
+        histogram.record(3600L * 1000000000L);
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertClose(1000, snapshot.getP99());
+        assertClose(3600L * 1000000000L, snapshot.getMax());
+    }
+
+    @Test
+    void negativeValuesAreZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.snapshot().getMax());
+        assertEquals(1, histogram.getCount());
+    }
+
+    @Test
+    void drainTo() {
+        LatencyHistogram interval = new LatencyHistogram();
+        LatencyHistogram total = new LatencyHistogram();
+        interval.record(100);
+        interval.record(200);
+        interval.drainTo(total);
+        assertEquals(0, interval.getCount());
+        assertEquals(2, total.getCount());
+        assertEquals(150, total.snapshot().getMean(), 1e-9);
+    }
+}
@@ -0,0 +1,218 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboundQueueTest {
+
+    private static Frame frame(String event, int length) {
+        return new Frame(event, new byte[length]);
+    }
+
+    private static OutboundQueue queue(int maxSize, OverflowPolicy policy) {
+        return new OutboundQueue(maxSize, 0, policy);
+    }
+
+    @Test
+    void unbounded() throws InterruptedException {
+        OutboundQueue queue = queue(0, OverflowPolicy.DISCONNECT);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(queue.offer(frame("e", 8), true));
+        }
+        assertEquals(1000, queue.size());
+        assertEquals(8000, queue.bytes());
+    }
+
+    @Test
+    void dropNewest() throws InterruptedException {
+        OutboundQueue queue = queue(2, OverflowPolicy.DROP_NEWEST);
+        Frame a = frame("e", 8), b = frame("e", 8), c = frame("e", 8);
+        queue.offer(a, true);
+        queue.offer(b, true);
+        assertTrue(queue.offer(c, true));
+        assertEquals(1, queue.dropped());
+        assertSame(a, queue.poll());
+        assertSame(b, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void dropOldest() throws InterruptedException {
+        OutboundQueue queue = queue(2, OverflowPolicy.DROP_OLDEST);
+        Frame a = frame("e", 8), b = frame("e", 8), c = frame("e", 8);
+        queue.offer(a, true);
+        queue.offer(b, true);
+        assertTrue(queue.offer(c, true));
+        assertEquals(1, queue.dropped());
+        assertSame(b, queue.poll());
+        assertSame(c, queue.poll());
+    }
+
+    @Test
+    void conflate() throws InterruptedException {
+        OutboundQueue queue = queue(2, OverflowPolicy.CONFLATE);
+        Frame a1 = frame("a", 8), b = frame("b", 8), a2 = frame("a", 8), c = frame("c", 8);
+        queue.offer(a1, true);
+        queue.offer(b, true);
+        queue.offer(a2, true);
+        // Nothing of the same event is queued, so the new frame is dropped
+        queue.offer(c, true);
+        assertEquals(2, queue.dropped());
+        assertSame(b, queue.poll());
+        assertSame(a2, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void disconnect() throws InterruptedException {
+        OutboundQueue queue = queue(2, OverflowPolicy.DISCONNECT);
+        assertTrue(queue.offer(frame("e", 8), true));
+        assertTrue(queue.offer(frame("e", 8), true));
+        assertFalse(queue.offer(frame("e", 8), true));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    void maxBytes() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(0, 20, OverflowPolicy.DROP_NEWEST);
+        queue.offer(frame("e", 12), true);
+        queue.offer(frame("e", 12), true);
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.dropped());
+
+        // A frame larger than the limit still goes through an empty queue
+        queue.poll();
+        queue.offer(frame("e", 100), true);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void offerIfRoom() throws InterruptedException {
+        OutboundQueue queue = queue(1, OverflowPolicy.DROP_OLDEST);
+        Frame event = frame("e", 8);
+        queue.offer(event, true);
+        assertFalse(queue.offerIfRoom(frame(null, 8)));
+        assertSame(event, queue.poll());
+        assertTrue(queue.offerIfRoom(frame(null, 8)));
+    }
+
+    @Test
+    void blockDisconnectsIfTheCallerMayNotWait() throws InterruptedException {
+        OutboundQueue queue = queue(1, OverflowPolicy.BLOCK);
+        assertTrue(queue.offer(frame("e", 8), false));
+        assertFalse(queue.offer(frame("e", 8), false));
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.dropped());
+    }
+
+    @Test
+    void replayedFramesIgnoreTheLimitWithBlock() throws InterruptedException {
+        OutboundQueue queue = queue(1, OverflowPolicy.BLOCK);
+        queue.offer(frame("e", 8), true);
+        assertTrue(queue.offerReplayed(frame("e", 8)));
+        assertEquals(2, queue.size());
+
+        OutboundQueue disconnect = queue(1, OverflowPolicy.DISCONNECT);
+        disconnect.offer(frame("e", 8), true);
+        assertFalse(disconnect.offerReplayed(frame("e", 8)));
+    }
+
+    @Test
+    void conflateRespectsMaxBytes() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(2, 24, OverflowPolicy.CONFLATE);
+        Frame a = frame("a", 8), b = frame("b", 8);
+        queue.offer(a, true);
+        queue.offer(b, true);
+        // Replacing the small frame would exceed the byte limit, so the new one is dropped
+        queue.offer(frame("a", 20), true);
+        assertEquals(1, queue.dropped());
+        assertEquals(16, queue.bytes());
+        assertSame(a, queue.poll());
+        assertSame(b, queue.poll());
+    }
+
+    @Test
+    void blockWaitsForRoom() throws InterruptedException {
+        final OutboundQueue queue = queue(1, OverflowPolicy.BLOCK);
+        queue.offer(frame("e", 8), true);
+        final CountDownLatch queued = new CountDownLatch(1);
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.offer(frame("e", 8), true);
+                    queued.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        sender.start();
+        assertFalse(queued.await(100, TimeUnit.MILLISECONDS));
+        queue.poll();
+        assertTrue(queued.await(5, TimeUnit.SECONDS));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void closeReleasesWaitingSenders() throws InterruptedException {
+        final OutboundQueue queue = queue(1, OverflowPolicy.BLOCK);
+        queue.offer(frame("e", 8), true);
+        final AtomicBoolean released = new AtomicBoolean();
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    released.set(queue.offer(frame("e", 8), true));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        sender.start();
+        Thread.sleep(50);
+        queue.close();
+        sender.join(5000);
+        assertTrue(released.get());
+        assertNull(queue.take());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void closeKeepsUnsentFrames() throws InterruptedException {
+        OutboundQueue queue = queue(3, OverflowPolicy.BLOCK);
+        Frame a = frame("e", 8), b = frame("e", 8), c = frame("e", 8);
+        queue.offer(a, true);
+        queue.offer(b, true);
+        queue.close(true);
+        assertEquals(0, queue.size());
+        queue.offer(c, true);
+        List<Frame> unsent = queue.unsent();
+        assertEquals(3, unsent.size());
+        assertSame(a, unsent.get(0));
+        assertSame(c, unsent.get(2));
+
+        // More than fit in the queue can't be kept, so none of them are
+        queue.offer(frame("e", 8), true);
+        assertNull(queue.unsent());
+    }
+
+    @Test
+    void closeDiscardsUnsentFrames() throws InterruptedException {
+        OutboundQueue queue = queue(3, OverflowPolicy.BLOCK);
+        queue.offer(frame("e", 8), true);
+        queue.close();
+        queue.offer(frame("e", 8), true);
+        assertTrue(queue.unsent().isEmpty());
+    }
+}
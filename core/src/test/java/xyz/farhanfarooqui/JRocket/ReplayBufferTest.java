@@ -0,0 +1,117 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayBufferTest {
+
+    /**
+     * A connection without a socket, only the buffer it records to matters here.
+     */
+    private static class TestConnection extends Connection {
+        TestConnection() {
+            super(JRocketClient.prepare("localhost", 0));
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void onFrameQueued() {
+        }
+
+        @Override
+        void close() {
+            closeQueue();
+        }
+    }
+
+    private static Frame[] write(ReplayBuffer buffer, Connection connection, int count) {
+        Frame[] frames = new Frame[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = new Frame("e", new byte[8]);
+            buffer.add(connection, frames[i]);
+        }
+        return frames;
+    }
+
+    @Test
+    void replaysWhatWasMissed() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        Connection first = new TestConnection();
+        assertTrue(buffer.attach(first, 0).isEmpty());
+        Frame[] frames = write(buffer, first, 5);
+
+        Connection second = new TestConnection();
+        List<Frame> missed = buffer.attach(second, 2);
+        assertEquals(3, missed.size());
+        for (int i = 0; i < missed.size(); i++) {
+            assertSame(frames[2 + i], missed.get(i));
+        }
+    }
+
+    @Test
+    void wrapsAround() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        Connection first = new TestConnection();
+        buffer.attach(first, 0);
+        Frame[] frames = write(buffer, first, 10);
+
+        assertTrue(buffer.covers(10));
+        assertTrue(buffer.covers(6));
+        assertFalse(buffer.covers(5));
+        assertFalse(buffer.covers(11));
+
+        List<Frame> missed = buffer.attach(new TestConnection(), 6);
+        assertEquals(4, missed.size());
+        for (int i = 0; i < missed.size(); i++) {
+            assertSame(frames[6 + i], missed.get(i));
+        }
+    }
+
+    @Test
+    void refusesWhatIsNoLongerKept() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        Connection first = new TestConnection();
+        buffer.attach(first, 0);
+        write(buffer, first, 10);
+
+        assertNull(buffer.attach(new TestConnection(), 5));
+        assertNull(buffer.attach(new TestConnection(), 11));
+        // The session stays with the first connection
+        write(buffer, first, 1);
+        assertTrue(buffer.covers(11));
+    }
+
+    @Test
+    void ignoresTheConnectionItMovedAwayFrom() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        Connection first = new TestConnection();
+        buffer.attach(first, 0);
+        write(buffer, first, 4);
+
+        Connection second = new TestConnection();
+        List<Frame> missed = buffer.attach(second, 1);
+        write(buffer, first, 3);
+        assertTrue(buffer.covers(1));
+        assertFalse(buffer.covers(2));
+
+        // The missed events are recorded again once they are written to the new connection
+        for (Frame frame : missed) {
+            buffer.add(second, frame);
+        }
+        Frame[] frames = write(buffer, second, 2);
+        List<Frame> again = buffer.attach(new TestConnection(), 4);
+        assertEquals(2, again.size());
+        assertSame(frames[0], again.get(0));
+        assertSame(frames[1], again.get(1));
+    }
+}
@@ -0,0 +1,95 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoundTripTimeTest {
+
+    /**
+     * A connection without a socket, the queued frames stay in the queue until the test polls them.
+     */
+    private static class TestConnection extends Connection {
+        TestConnection() {
+            super(JRocketClient.prepare("localhost", 0));
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void onFrameQueued() {
+        }
+
+        @Override
+        void close() {
+            closeQueue();
+        }
+    }
+
+    private static ByteBuffer timestamp(long sentAt) {
+        ByteBuffer body = ByteBuffer.allocate(FrameCodec.PING_SIZE);
+        body.putLong(0, sentAt);
+        return body;
+    }
+
+    @Test
+    void firstSampleSetsTheTime() {
+        Connection connection = new TestConnection();
+        assertEquals(-1, connection.getRoundTripTime());
+        assertEquals(-1, connection.getRoundTripJitter());
+        connection.onRoundTrip(1000);
+        assertEquals(1000, connection.getRoundTripTime());
+        assertEquals(500, connection.getRoundTripJitter());
+    }
+
+    @Test
+    void smoothsLaterSamples() {
+        Connection connection = new TestConnection();
+        connection.onRoundTrip(1000);
+        connection.onRoundTrip(2000);
+        // 7/8 of the previous time plus 1/8 of the sample, 3/4 of the previous jitter plus 1/4 of the deviation
+        assertEquals(1125, connection.getRoundTripTime());
+        assertEquals(625, connection.getRoundTripJitter());
+
+        for (int i = 0; i < 100; i++) {
+            connection.onRoundTrip(8000);
+        }
+        assertTrue(Math.abs(connection.getRoundTripTime() - 8000) < 10);
+        assertTrue(connection.getRoundTripJitter() < 10);
+    }
+
+    @Test
+    void measuresPongs() throws Exception {
+        Connection connection = new TestConnection();
+        LatencyHistogram roundTripTimes = new LatencyHistogram();
+        connection.setRoundTripTimes(roundTripTimes);
+        long sentAt = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        connection.onFrame((byte) (FrameCodec.FLAG_HEARTBEAT | FrameCodec.FLAG_PONG), timestamp(sentAt));
+        long roundTripTime = connection.getRoundTripTime();
+        assertTrue(roundTripTime >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(1, roundTripTimes.getCount());
+
+        // A timestamp from the future isn't a sample
+        connection.onFrame((byte) (FrameCodec.FLAG_HEARTBEAT | FrameCodec.FLAG_PONG), timestamp(System.nanoTime() + TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(roundTripTime, connection.getRoundTripTime());
+        assertEquals(1, roundTripTimes.getCount());
+    }
+
+    @Test
+    void answersPings() throws Exception {
+        Connection connection = new TestConnection();
+        connection.onFrame(FrameCodec.FLAG_HEARTBEAT, timestamp(42));
+        ByteBuffer pong = connection.mQueue.poll().buffer();
+        assertEquals(FrameCodec.FLAG_HEARTBEAT | FrameCodec.FLAG_PONG, pong.get(FrameCodec.LENGTH_FIELD_SIZE));
+        assertEquals(42, pong.getLong(FrameCodec.LENGTH_FIELD_SIZE + FrameCodec.FLAGS_SIZE));
+        assertNull(connection.mQueue.poll());
+        assertEquals(-1, connection.getRoundTripTime());
+    }
+}
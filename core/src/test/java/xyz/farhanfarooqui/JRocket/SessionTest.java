@@ -0,0 +1,172 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SessionTest {
+
+    /**
+     * A connection without a socket, the queued frames stay in the queue until the test polls them.
+     */
+    private static class TestConnection extends Connection {
+        TestConnection(JRocket JRocket) {
+            super(JRocket);
+        }
+
+        @Override
+        void start() {
+        }
+
+        @Override
+        void onFrameQueued() {
+        }
+
+        @Override
+        void close() {
+            closeQueue();
+        }
+    }
+
+    private static final long TIMEOUT = 60000;
+
+    private final Runnable mExpiry = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private JRocketServer mServer;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mServer = JRocketServer.listen(0, 1, Engine.NIO);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mServer.stop();
+    }
+
+    private Client client() {
+        return Client.createClient(Utils.createID(), new TestConnection(mServer));
+    }
+
+    /**
+     * Writes the frame like the sender of the connection does.
+     */
+    private static Frame write(Connection connection) {
+        Frame frame = connection.mQueue.poll();
+        connection.onFrameWritten(frame);
+        return frame;
+    }
+
+    @Test
+    void resumeSendsMissedThenUnsentThenHeldEvents() {
+        Client client = client();
+        Session session = new Session(client, 8);
+        Connection first = client.getConnection();
+
+        Frame received = new Frame("e", new byte[8]);
+        Frame missed = new Frame("e", new byte[8]);
+        Frame unsent = new Frame("e", new byte[8]);
+        Frame held = new Frame("e", new byte[8]);
+        session.send(received);
+        session.send(missed);
+        write(first);
+        write(first);
+        session.send(unsent);
+        first.close();
+
+        assertTrue(session.park(mExpiry, TIMEOUT));
+        assertTrue(session.isParked());
+        session.send(held);
+
+        Client hello = client();
+        assertEquals(Session.Resumption.RESUMED, session.resume(hello, 1, Reply.NONE, null));
+        assertFalse(session.isParked());
+        Connection second = client.getConnection();
+        assertSame(hello.getConnection(), second);
+        assertSame(missed, second.mQueue.poll());
+        assertSame(unsent, second.mQueue.poll());
+        assertSame(held, second.mQueue.poll());
+        assertNull(second.mQueue.poll());
+    }
+
+    @Test
+    void resumedEventsAreRecordedAgain() {
+        Client client = client();
+        Session session = new Session(client, 8);
+        session.send(new Frame("e", new byte[8]));
+        write(client.getConnection());
+        client.getConnection().close();
+        session.park(mExpiry, TIMEOUT);
+
+        assertEquals(Session.Resumption.RESUMED, session.resume(client(), 0, Reply.NONE, null));
+        Frame replayed = write(client.getConnection());
+        client.getConnection().close();
+        session.park(mExpiry, TIMEOUT);
+
+        Client hello = client();
+        assertEquals(Session.Resumption.RESUMED, session.resume(hello, 0, Reply.NONE, null));
+        assertSame(replayed, hello.getConnection().mQueue.poll());
+        session.end();
+    }
+
+    @Test
+    void retriesWhileTheOldConnectionIsOpen() {
+        Client client = client();
+        Session session = new Session(client, 8);
+        Client hello = client();
+        assertEquals(Session.Resumption.RETRY, session.resume(hello, 0, Reply.NONE, null));
+        assertFalse(session.isParked());
+        assertSame(client.getConnection(), session.getClient().getConnection());
+    }
+
+    @Test
+    void failsOnceTooManyEventsWereHeld() {
+        Client client = client();
+        Session session = new Session(client, 2);
+        client.getConnection().close();
+        session.park(mExpiry, TIMEOUT);
+        for (int i = 0; i < 3; i++) {
+            session.send(new Frame("e", new byte[8]));
+        }
+        assertEquals(Session.Resumption.FAILED, session.resume(client(), 0, Reply.NONE, null));
+        session.end();
+    }
+
+    @Test
+    void failsOnceMissedEventsAreNoLongerKept() {
+        Client client = client();
+        Session session = new Session(client, 2);
+        for (int i = 0; i < 4; i++) {
+            session.send(new Frame("e", new byte[8]));
+            write(client.getConnection());
+        }
+        client.getConnection().close();
+        session.park(mExpiry, TIMEOUT);
+        assertEquals(Session.Resumption.FAILED, session.resume(client(), 1, Reply.NONE, null));
+        assertEquals(Session.Resumption.RESUMED, session.resume(client(), 2, Reply.NONE, null));
+    }
+
+    @Test
+    void endedSessionsStayEnded() {
+        Client client = client();
+        Session session = new Session(client, 8);
+        client.getConnection().close();
+        session.park(mExpiry, TIMEOUT);
+        assertTrue(session.end());
+        assertFalse(session.end());
+        assertFalse(session.park(mExpiry, TIMEOUT));
+        assertEquals(Session.Resumption.FAILED, session.resume(client(), 0, Reply.NONE, null));
+    }
+}
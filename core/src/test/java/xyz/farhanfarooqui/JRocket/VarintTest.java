@@ -0,0 +1,68 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class VarintTest {
+    private static final long[] VALUES = {0, 1, 127, 128, 300, 16383, 16384, Integer.MAX_VALUE, 1L << 35, Long.MAX_VALUE, -1};
+
+    @Test
+    void roundTrip() throws IOException {
+        for (long value : VALUES) {
+            ByteBuffer buffer = ByteBuffer.allocate(16);
+            Varint.write(buffer, value);
+            assertEquals(Varint.size(value), buffer.position(), "size of " + value);
+            buffer.flip();
+            assertEquals(value, Varint.read(buffer));
+            assertEquals(0, buffer.remaining());
+        }
+    }
+
+    @Test
+    void sizes() {
+        assertEquals(1, Varint.size(0));
+        assertEquals(1, Varint.size(127));
+        assertEquals(2, Varint.size(128));
+        assertEquals(3, Varint.size(16384));
+        assertEquals(10, Varint.size(-1));
+    }
+
+    @Test
+    void truncated() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80});
+        assertThrows(IOException.class, () -> Varint.read(buffer));
+    }
+
+    @Test
+    void malformed() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0xFF);
+        assertThrows(IOException.class, () -> Varint.read(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void readIntRejectsValuesOutOfRange() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        Varint.write(buffer, Integer.MAX_VALUE + 1L);
+        buffer.flip();
+        assertThrows(IOException.class, () -> Varint.readInt(buffer));
+    }
+
+    @Test
+    void zigZag() {
+        assertEquals(0, Varint.zigZag(0));
+        assertEquals(1, Varint.zigZag(-1));
+        assertEquals(2, Varint.zigZag(1));
+        assertEquals(3, Varint.zigZag(-2));
+        for (long value : VALUES) {
+            assertEquals(value, Varint.unZigZag(Varint.zigZag(value)));
+        }
+        assertEquals(Long.MIN_VALUE, Varint.unZigZag(Varint.zigZag(Long.MIN_VALUE)));
+    }
+}
@@ -0,0 +1,518 @@
+package xyz.farhanfarooqui.JRocket.tools;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import xyz.farhanfarooqui.JRocket.Client;
+import xyz.farhanfarooqui.JRocket.ClientListeners.OnReceiveListener;
+import xyz.farhanfarooqui.JRocket.Engine;
+import xyz.farhanfarooqui.JRocket.EventLoopGroup;
+import xyz.farhanfarooqui.JRocket.HistogramSnapshot;
+import xyz.farhanfarooqui.JRocket.JRocketClient;
+import xyz.farhanfarooqui.JRocket.JRocketServer;
+import xyz.farhanfarooqui.JRocket.LatencyHistogram;
+import xyz.farhanfarooqui.JRocket.Reply;
+import xyz.farhanfarooqui.JRocket.ServerListeners.OnClientConnectListener;
+import xyz.farhanfarooqui.JRocket.ServerListeners.OnRequestListener;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Load generator and soak test. Ramps up simulated {@link JRocketClient}s against a {@link JRocketServer}, drives a mix of
+ * sends, broadcasts and requests at a target rate and reports throughput, end-to-end latency percentiles, the connection
+ * setup rate and the heap and threads of the server. Everything runs on localhost, either in one process or with the
+ * server in a separate process:
+ *
+ * <pre>
+ * java -jar loadgen/target/loadgen.jar --clients=1000 --rate=20000 --duration=60
+ * java -jar loadgen/target/loadgen.jar --mode=server --port=9000
+ * java -jar loadgen/target/loadgen.jar --mode=client --port=9000 --clients=5000 --duration=3600 --output=soak.txt
+ * </pre>
+ *
+ * The load is open loop: every operation is stamped with the time it was scheduled rather than the time it was sent, so a
+ * stall of the server or of the generator shows up in the latency instead of silently lowering the rate.
+ */
+
+public final class LoadGenerator {
+    private static final String ECHO = "lg.echo";
+    private static final String BROADCAST = "lg.broadcast";
+    private static final String REQUEST = "lg.request";
+    private static final String STATS = "lg.stats";
+
+    private static final String[] OPTIONS = {
+            "mode", "all", "all runs the server and the clients in this process, server only the server, client only the clients",
+            "host", "localhost", "Host of the server in client mode",
+            "port", "9000", "Port of the server",
+            "engine", "NIO", "Engine of the server",
+            "threads", "0", "Threads of the server, see JRocketServer.listen()",
+            "acceptors", "1", "Threads which accept the connections of the server",
+            "client-engine", "NIO", "Engine of the clients",
+            "loops", "0", "Event loops shared by the clients on NIO, zero means one per processor",
+            "clients", "100", "Number of clients",
+            "ramp", "10", "Seconds over which the clients are connected",
+            "duration", "30", "Seconds to run after the ramp",
+            "rate", "1000", "Operations per second over all clients",
+            "mix", "send:70,broadcast:10,request:20", "Weights of the operations",
+            "room", "0", "Size of the rooms broadcasts go to, zero means every client",
+            "payload", "64", "Bytes of padding in every payload",
+            "timeout", "5000", "Timeout of requests in milliseconds",
+            "report", "1", "Seconds between reports",
+            "output", "-", "File the reports are written to, - for the standard output",
+    };
+
+    private final Map<String, String> mOptions;
+    private final PrintStream mOut;
+    private final int mClientCount;
+    private final int mRate;
+    private final int mSendWeight;
+    private final int mBroadcastWeight;
+    private final int mRequestWeight;
+    private final String mPadding;
+    private final long mTimeout;
+
+    private final AtomicReferenceArray<JRocketClient> mConnected;
+    /**
+     * Slot of every client in {@link #mConnected}, or -1 until it first connected. A client which reconnects keeps its slot.
+     */
+    private final AtomicIntegerArray mSlots;
+    private final AtomicInteger mNextSlot = new AtomicInteger();
+    private final AtomicInteger mConnectedCount = new AtomicInteger();
+    private final long[] mConnectStart;
+    private final LongAdder mConnectFailed = new LongAdder();
+    private final LongAdder mDisconnected = new LongAdder();
+
+    private final LongAdder mSent = new LongAdder();
+    private final LongAdder mBroadcasts = new LongAdder();
+    private final LongAdder mRequests = new LongAdder();
+    private final LongAdder mErrors = new LongAdder();
+
+    private final LatencyHistogram mConnectLatency = new LatencyHistogram();
+    private final LatencyHistogram mSendLatency = new LatencyHistogram();
+    private final LatencyHistogram mBroadcastLatency = new LatencyHistogram();
+    private final LatencyHistogram mRequestLatency = new LatencyHistogram();
+    private final LatencyHistogram mTotalConnectLatency = new LatencyHistogram();
+    private final LatencyHistogram mTotalSendLatency = new LatencyHistogram();
+    private final LatencyHistogram mTotalBroadcastLatency = new LatencyHistogram();
+    private final LatencyHistogram mTotalRequestLatency = new LatencyHistogram();
+
+    private volatile JSONObject mServerStats;
+
+    private LoadGenerator(Map<String, String> options, PrintStream out) {
+        mOptions = options;
+        mOut = out;
+        mClientCount = getInt("clients");
+        mRate = getInt("rate");
+        int[] weights = parseMix(options.get("mix"));
+        mSendWeight = weights[0];
+        mBroadcastWeight = weights[1];
+        mRequestWeight = weights[2];
+        char[] padding = new char[getInt("payload")];
+        Arrays.fill(padding, 'x');
+        mPadding = new String(padding);
+        mTimeout = getInt("timeout");
+        mConnected = new AtomicReferenceArray<>(mClientCount);
+        mSlots = new AtomicIntegerArray(mClientCount);
+        for (int i = 0; i < mClientCount; i++) {
+            mSlots.set(i, -1);
+        }
+        mConnectStart = new long[mClientCount];
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        if (options == null) {
+            printUsage(System.err);
+            System.exit(1);
+            return;
+        }
+        String output = options.get("output");
+        PrintStream out = output.equals("-") ? System.out : new PrintStream(new FileOutputStream(output), true, "UTF-8");
+        String mode = options.get("mode");
+        JRocketServer server = null;
+        if (!mode.equals("client")) {
+            server = startServer(Integer.parseInt(options.get("port")), Integer.parseInt(options.get("threads")),
+                    Engine.valueOf(options.get("engine")), Integer.parseInt(options.get("acceptors")), Integer.parseInt(options.get("room")));
+            out.println("Server listening on port " + server.getLocalPort() + " with " + server.getEngine());
+            if (mode.equals("server")) {
+                return;
+            }
+        }
+        new LoadGenerator(options, out).run();
+        if (server != null) {
+            server.stop();
+        }
+        out.close();
+        System.exit(0);
+    }
+
+    /**
+     * Starts a server which answers the events of the generator. In server mode it keeps running until the process is killed.
+     */
+    private static JRocketServer startServer(int port, int threads, Engine engine, int acceptors, final int roomSize) throws IOException {
+        final JRocketServer server = JRocketServer.listen(port, threads, engine, acceptors);
+        final AtomicInteger joined = new AtomicInteger();
+        server.setOnClientConnectListener(new OnClientConnectListener() {
+            @Override
+            public void onClientConnect(Client client) {
+                if (roomSize > 0) {
+                    client.join("lg-" + joined.getAndIncrement() / roomSize);
+                }
+            }
+        });
+        server.onReceive(ECHO, new xyz.farhanfarooqui.JRocket.ServerListeners.OnReceiveListener() {
+            @Override
+            public void onReceive(JSONObject data, Client client) {
+                client.send(ECHO, data);
+            }
+        }, true);
+        server.onReceive(BROADCAST, new xyz.farhanfarooqui.JRocket.ServerListeners.OnReceiveListener() {
+            @Override
+            public void onReceive(JSONObject data, Client client) {
+                if (roomSize > 0) {
+                    for (String room : client.getRooms()) {
+                        server.to(room).broadCast(BROADCAST, data, client);
+                    }
+                } else {
+                    client.broadCast(BROADCAST, data);
+                }
+            }
+        }, true);
+        server.onRequest(REQUEST, new OnRequestListener() {
+            @Override
+            public void onRequest(JSONObject data, Client client, Reply reply) {
+                reply.send(data);
+            }
+        }, true);
+        server.onRequest(STATS, new OnRequestListener() {
+            @Override
+            public void onRequest(JSONObject data, Client client, Reply reply) {
+                MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+                JSONObject stats = new JSONObject();
+                try {
+                    stats.put("heapUsed", heap.getUsed());
+                    stats.put("heapMax", heap.getMax());
+                    stats.put("threads", ManagementFactory.getThreadMXBean().getThreadCount());
+                    stats.put("clients", server.getClientCount());
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+                reply.send(stats);
+            }
+        });
+        return server;
+    }
+
+    private void run() throws IOException, InterruptedException {
+        String host = mOptions.get("host");
+        int port = getInt("port");
+        Engine clientEngine = Engine.valueOf(mOptions.get("client-engine"));
+        EventLoopGroup eventLoopGroup = clientEngine == Engine.NIO ? new EventLoopGroup(getInt("loops")) : null;
+        long rampNanos = getInt("ramp") * 1000000000L;
+        long durationNanos = getInt("duration") * 1000000000L;
+        long reportNanos = Math.max(1, getInt("report")) * 1000000000L;
+
+        JRocketClient[] clients = new JRocketClient[mClientCount];
+        for (int i = 0; i < mClientCount; i++) {
+            clients[i] = prepareClient(host, port, i, clientEngine, eventLoopGroup);
+        }
+
+        long start = System.nanoTime();
+        long nextReport = start + reportNanos;
+        long lastReport = start;
+        long steadyStart = 0;
+        long[] lastCounts = new long[3];
+        int started = 0;
+        long issued = 0;
+        long rateStart = 0;
+        while (true) {
+            long now = System.nanoTime();
+            long elapsed = now - start;
+            if (elapsed >= rampNanos + durationNanos) {
+                break;
+            }
+
+            int target = rampNanos == 0 ? mClientCount : (int) Math.min(mClientCount, mClientCount * elapsed / rampNanos + 1);
+            for (; started < target; started++) {
+                mConnectStart[started] = System.nanoTime();
+                clients[started].connect();
+            }
+
+            int connected = mConnectedCount.get();
+            if (connected > 0) {
+                if (rateStart == 0) {
+                    rateStart = now;
+                }
+                long due = (now - rateStart) * mRate / 1000000000L;
+                for (; issued < due; issued++) {
+                    long scheduled = rateStart + issued * 1000000000L / mRate;
+                    issue(mConnected.get(ThreadLocalRandom.current().nextInt(connected)), scheduled);
+                }
+            }
+
+            if (now >= nextReport) {
+                boolean steady = lastReport - start >= rampNanos;
+                if (steady && steadyStart == 0) {
+                    steadyStart = lastReport;
+                }
+                report(elapsed, now - lastReport, lastCounts, steady);
+                requestServerStats();
+                lastReport = now;
+                nextReport += reportNanos;
+            }
+            Thread.sleep(1);
+        }
+
+        long end = System.nanoTime();
+        boolean steady = lastReport - start >= rampNanos;
+        if (steady && steadyStart == 0) {
+            steadyStart = lastReport;
+        }
+        report(end - start, end - lastReport, lastCounts, steady);
+        long steadyNanos = steadyStart == 0 ? 0 : end - steadyStart;
+        printSummary(steadyNanos);
+        for (JRocketClient client : clients) {
+            client.disconnect();
+        }
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdown();
+        }
+    }
+
+    private JRocketClient prepareClient(String host, int port, final int index, Engine engine, EventLoopGroup eventLoopGroup) {
+        JRocketClient client = JRocketClient.prepare(host, port, new JRocketClient.RocketClientListener() {
+            @Override
+            public void onConnect(JRocketClient rocketClient) {
+                // Reconnects keep the slot of the first connect, so there is never more than one slot per client
+                if (mSlots.get(index) >= 0) {
+                    return;
+                }
+                int slot = mNextSlot.getAndIncrement();
+                mSlots.set(index, slot);
+                mConnectLatency.record(System.nanoTime() - mConnectStart[index]);
+                mConnected.set(slot, rocketClient);
+                mConnectedCount.incrementAndGet();
+            }
+
+            @Override
+            public void onConnectFailed(JRocketClient rocketClient) {
+                mConnectFailed.increment();
+            }
+
+            @Override
+            public void onDisconnect(JRocketClient rocketClient) {
+                mDisconnected.increment();
+            }
+        });
+        client.setEngine(engine);
+        if (eventLoopGroup != null) {
+            client.setEventLoopGroup(eventLoopGroup);
+        }
+        client.onReceive(ECHO, new LatencyListener(mSendLatency), true);
+        client.onReceive(BROADCAST, new LatencyListener(mBroadcastLatency), true);
+        return client;
+    }
+
+    private void issue(JRocketClient client, long scheduled) {
+        if (client == null) {
+            return;
+        }
+        JSONObject data = new JSONObject();
+        try {
+            data.put("t", scheduled);
+            data.put("p", mPadding);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(mSendWeight + mBroadcastWeight + mRequestWeight);
+        if (pick < mSendWeight) {
+            mSent.increment();
+            if (!client.send(ECHO, data)) {
+                mErrors.increment();
+            }
+        } else if (pick < mSendWeight + mBroadcastWeight) {
+            mBroadcasts.increment();
+            if (!client.send(BROADCAST, data)) {
+                mErrors.increment();
+            }
+        } else {
+            mRequests.increment();
+            final long sentAt = scheduled;
+            client.request(REQUEST, data, mTimeout).whenComplete(new BiConsumer<JSONObject, Throwable>() {
+                @Override
+                public void accept(JSONObject response, Throwable throwable) {
+                    if (throwable != null) {
+                        mErrors.increment();
+                    } else {
+                        mRequestLatency.record(System.nanoTime() - sentAt);
+                    }
+                }
+            });
+        }
+    }
+
+    private void requestServerStats() {
+        JRocketClient client = mConnectedCount.get() > 0 ? mConnected.get(0) : null;
+        if (client == null) {
+            return;
+        }
+        client.request(STATS, new JSONObject(), mTimeout).whenComplete(new BiConsumer<JSONObject, Throwable>() {
+            @Override
+            public void accept(JSONObject stats, Throwable throwable) {
+                if (stats != null) {
+                    mServerStats = stats;
+                }
+            }
+        });
+    }
+
+    /**
+     * Prints the interval since the last report. Latencies of the interval are moved into the totals once the ramp is over.
+     */
+    private void report(long elapsed, long interval, long[] lastCounts, boolean steady) {
+        long[] counts = {mSent.sum(), mBroadcasts.sum(), mRequests.sum()};
+        double seconds = interval / 1e9;
+        HistogramSnapshot connects = mConnectLatency.snapshot();
+        StringBuilder line = new StringBuilder();
+        line.append(String.format("[%5ds] clients %d/%d +%.0f/s (connect p99 %s, failed %d, lost %d)%n", elapsed / 1000000000L,
+                mConnectedCount.get(), mClientCount, connects.getCount() / seconds, millis(connects.getP99()),
+                mConnectFailed.sum(), mDisconnected.sum()));
+        line.append(String.format("        ops %.0f/s: send %.0f/s, broadcast %.0f/s, request %.0f/s, errors %d%n",
+                (counts[0] + counts[1] + counts[2] - lastCounts[0] - lastCounts[1] - lastCounts[2]) / seconds,
+                (counts[0] - lastCounts[0]) / seconds, (counts[1] - lastCounts[1]) / seconds, (counts[2] - lastCounts[2]) / seconds,
+                mErrors.sum()));
+        line.append(latencyLine("send", mSendLatency, seconds));
+        line.append(latencyLine("broadcast", mBroadcastLatency, seconds));
+        line.append(latencyLine("request", mRequestLatency, seconds));
+        JSONObject stats = mServerStats;
+        if (stats != null) {
+            line.append(String.format("        server heap %d/%d MB, threads %d, clients %d%n", stats.optLong("heapUsed") >> 20,
+                    stats.optLong("heapMax") >> 20, stats.optInt("threads"), stats.optInt("clients")));
+        }
+        mOut.print(line);
+        System.arraycopy(counts, 0, lastCounts, 0, counts.length);
+
+        if (steady) {
+            mConnectLatency.drainTo(mTotalConnectLatency);
+            mSendLatency.drainTo(mTotalSendLatency);
+            mBroadcastLatency.drainTo(mTotalBroadcastLatency);
+            mRequestLatency.drainTo(mTotalRequestLatency);
+        } else {
+            mConnectLatency.drainTo(mTotalConnectLatency);
+            mSendLatency.drainTo(new LatencyHistogram());
+            mBroadcastLatency.drainTo(new LatencyHistogram());
+            mRequestLatency.drainTo(new LatencyHistogram());
+        }
+    }
+
+    private void printSummary(long steadyNanos) {
+        double seconds = Math.max(1, steadyNanos) / 1e9;
+        HistogramSnapshot connects = mTotalConnectLatency.snapshot();
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("%nSummary over %.1fs after the ramp%n", steadyNanos / 1e9));
+        summary.append(String.format("        connected %d/%d, connect p50 %s p99 %s p999 %s, failed %d, lost %d%n", mConnectedCount.get(),
+                mClientCount, millis(connects.getP50()), millis(connects.getP99()), millis(connects.getP999()), mConnectFailed.sum(), mDisconnected.sum()));
+        summary.append(latencyLine("send", mTotalSendLatency, seconds));
+        summary.append(latencyLine("broadcast", mTotalBroadcastLatency, seconds));
+        summary.append(latencyLine("request", mTotalRequestLatency, seconds));
+        summary.append(String.format("        errors %d%n", mErrors.sum()));
+        mOut.print(summary);
+    }
+
+    private static String latencyLine(String name, LatencyHistogram histogram, double seconds) {
+        HistogramSnapshot snapshot = histogram.snapshot();
+        if (snapshot.getCount() == 0) {
+            return "";
+        }
+        return String.format("        %-9s %9.0f/s  p50 %s  p99 %s  p999 %s  max %s%n", name, snapshot.getCount() / seconds, millis(snapshot.getP50()),
+                millis(snapshot.getP99()), millis(snapshot.getP999()), millis(snapshot.getMax()));
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3fms", nanos / 1e6);
+    }
+
+    private int getInt(String option) {
+        return Integer.parseInt(mOptions.get(option));
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[3];
+        for (String part : mix.split(",")) {
+            String[] pair = part.split(":");
+            int weight = Integer.parseInt(pair[1].trim());
+            switch (pair[0].trim()) {
+                case "send":
+                    weights[0] = weight;
+                    break;
+                case "broadcast":
+                    weights[1] = weight;
+                    break;
+                case "request":
+                    weights[2] = weight;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation in mix: " + pair[0]);
+            }
+        }
+        if (weights[0] + weights[1] + weights[2] <= 0) {
+            throw new IllegalArgumentException("Mix has no operations: " + mix);
+        }
+        return weights;
+    }
+
+    /**
+     * Parses {@code --name=value} arguments over the defaults.
+     *
+     * @return The options, or null if an argument is unknown.
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < OPTIONS.length; i += 3) {
+            options.put(OPTIONS[i], OPTIONS[i + 1]);
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0 || !options.containsKey(arg.substring(2, equals))) {
+                return null;
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        return options;
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: LoadGenerator [--name=value]...");
+        for (int i = 0; i < OPTIONS.length; i += 3) {
+            out.println(String.format("  --%-14s %s (default %s)", OPTIONS[i], OPTIONS[i + 2], OPTIONS[i + 1]));
+        }
+    }
+
+    /**
+     * Records the time from when the received event was scheduled until now.
+     */
+    private static class LatencyListener implements OnReceiveListener {
+        private final LatencyHistogram mHistogram;
+
+        LatencyListener(LatencyHistogram histogram) {
+            mHistogram = histogram;
+        }
+
+        @Override
+        public void onReceive(JSONObject data) {
+            mHistogram.record(System.nanoTime() - data.optLong("t"));
+        }
+    }
+}
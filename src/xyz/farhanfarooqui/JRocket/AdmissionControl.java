@@ -0,0 +1,125 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * AdmissionControl decides right after a socket was accepted whether the server takes it, before anything is allocated
+ * for the client. It limits the number of connections, the rate at which they are accepted and the number of connections
+ * from one address. Zero means no limit.
+ * <br>
+ * The rate is a token bucket which holds up to one second worth of connections, so short bursts are let through.
+ */
+
+final class AdmissionControl {
+    private volatile int mMaxConnections;
+    private volatile int mMaxAcceptRate;
+    private volatile int mMaxConnectionsPerAddress;
+    private final ConcurrentHashMap<InetAddress, Integer> mAddresses = new ConcurrentHashMap<>();
+    private double mTokens;
+    private long mLastRefill = System.nanoTime();
+
+    enum Rejection {
+        MAX_CONNECTIONS,
+        ACCEPT_RATE,
+        CONNECTIONS_PER_ADDRESS
+    }
+
+    int getMaxConnections() {
+        return mMaxConnections;
+    }
+
+    void setMaxConnections(int maxConnections) {
+        mMaxConnections = maxConnections;
+    }
+
+    int getMaxAcceptRate() {
+        return mMaxAcceptRate;
+    }
+
+    void setMaxAcceptRate(int maxAcceptRate) {
+        mMaxAcceptRate = maxAcceptRate;
+    }
+
+    int getMaxConnectionsPerAddress() {
+        return mMaxConnectionsPerAddress;
+    }
+
+    void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) {
+        mMaxConnectionsPerAddress = maxConnectionsPerAddress;
+    }
+
+    /**
+     * Takes the connection, unless it exceeds a limit. Every connection which was taken has to be released once.
+     *
+     * @param connections Number of connections the server has, including the ones which are still being set up.
+     * @return The limit the connection exceeds, or null if it was taken.
+     */
+    Rejection admit(InetAddress address, int connections) {
+        int maxConnections = mMaxConnections;
+        if (maxConnections > 0 && connections >= maxConnections) {
+            return Rejection.MAX_CONNECTIONS;
+        }
+        // The address is counted first, so a connection it rejects doesn't use up a token
+        if (address != null && !addAddress(address)) {
+            return Rejection.CONNECTIONS_PER_ADDRESS;
+        }
+        if (!takeToken()) {
+            release(address);
+            return Rejection.ACCEPT_RATE;
+        }
+        return null;
+    }
+
+    /**
+     * Called when a connection which was taken is closed.
+     */
+    void release(InetAddress address) {
+        if (address == null) {
+            return;
+        }
+        mAddresses.computeIfPresent(address, new BiFunction<InetAddress, Integer, Integer>() {
+            @Override
+            public Integer apply(InetAddress key, Integer count) {
+                return count > 1 ? count - 1 : null;
+            }
+        });
+    }
+
+    private synchronized boolean takeToken() {
+        int rate = mMaxAcceptRate;
+        if (rate <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        mTokens = Math.min(rate, mTokens + (now - mLastRefill) * rate / 1e9);
+        mLastRefill = now;
+        if (mTokens < 1) {
+            return false;
+        }
+        mTokens--;
+        return true;
+    }
+
+    /**
+     * Counts the connection from the address. Connections are counted even without a limit, so setting one applies to the
+     * connections which are already open.
+     */
+    private boolean addAddress(InetAddress address) {
+        final int max = mMaxConnectionsPerAddress;
+        final boolean[] added = new boolean[1];
+        mAddresses.compute(address, new BiFunction<InetAddress, Integer, Integer>() {
+            @Override
+            public Integer apply(InetAddress key, Integer count) {
+                int current = count != null ? count : 0;
+                if (max > 0 && current >= max) {
+                    return count;
+                }
+                added[0] = true;
+                return current + 1;
+            }
+        });
+        return added[0];
+    }
+}
@@ -0,0 +1,282 @@
+package xyz.farhanfarooqui.JRocket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Encodes payloads in a compact binary form of JSON. Every value starts with a one-byte tag. Integers are zig-zag
+ * varints, doubles take 8 bytes, and strings, arrays and objects are prefixed with their varint length. Numbers and
+ * booleans are never written as text and object keys need no quotes, so payloads are smaller and faster to parse than
+ * JSON text.
+ * <br>
+ * {@link JSONObject}s are converted directly. Other objects are converted through the Gson tree model, without ever being
+ * written as text.
+ */
+public class BinaryPayloadCodec implements PayloadCodec {
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INT = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte STRING = 5;
+    private static final byte ARRAY = 6;
+    private static final byte OBJECT = 7;
+
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private final Gson mGson;
+
+    public BinaryPayloadCodec() {
+        this(new Gson());
+    }
+
+    /**
+     * @param gson The Gson instance which converts objects, e.g. one with custom type adapters.
+     */
+    public BinaryPayloadCodec(Gson gson) {
+        mGson = gson;
+    }
+
+    @Override
+    public byte[] encode(Object data) throws IOException {
+        Output output = new Output();
+        if (data instanceof JSONObject) {
+            writeJSON(output, data);
+        } else {
+            try {
+                writeTree(output, mGson.toJsonTree(data));
+            } catch (JsonParseException e) {
+                throw new IOException(e);
+            }
+        }
+        return output.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(ByteBuffer payload, Class<T> type) throws IOException {
+        try {
+            if (type == JSONObject.class) {
+                return type.cast(readJSON(payload));
+            }
+            return mGson.fromJson(readTree(payload), type);
+        } catch (JSONException | JsonParseException | ClassCastException | BufferUnderflowException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void writeJSON(Output output, Object value) {
+        if (value == null || value == JSONObject.NULL) {
+            output.put(NULL);
+        } else if (value instanceof Boolean) {
+            output.put((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            output.putInt(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            output.putDouble(((Number) value).doubleValue());
+        } else if (value instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) value;
+            output.put(OBJECT);
+            output.putLength(jsonObject.length());
+            Iterator<?> keys = jsonObject.keys();
+            while (keys.hasNext()) {
+                String key = (String) keys.next();
+                output.putString(key);
+                writeJSON(output, jsonObject.opt(key));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray jsonArray = (JSONArray) value;
+            output.put(ARRAY);
+            output.putLength(jsonArray.length());
+            for (int i = 0; i < jsonArray.length(); i++) {
+                writeJSON(output, jsonArray.opt(i));
+            }
+        } else {
+            output.put(STRING);
+            output.putString(value.toString());
+        }
+    }
+
+    private static Object readJSON(ByteBuffer input) throws IOException, JSONException {
+        byte tag = input.get();
+        switch (tag) {
+            case NULL:
+                return JSONObject.NULL;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                long value = Varint.unZigZag(Varint.read(input));
+                if (value == (int) value) {
+                    return (int) value;
+                }
+                return value;
+            case DOUBLE:
+                return input.getDouble();
+            case STRING:
+                return readString(input);
+            case ARRAY:
+                JSONArray jsonArray = new JSONArray();
+                for (int i = Varint.readInt(input); i > 0; i--) {
+                    jsonArray.put(readJSON(input));
+                }
+                return jsonArray;
+            case OBJECT:
+                JSONObject jsonObject = new JSONObject();
+                for (int i = Varint.readInt(input); i > 0; i--) {
+                    String key = readString(input);
+                    jsonObject.put(key, readJSON(input));
+                }
+                return jsonObject;
+            default:
+                throw new IOException("Unknown tag " + tag);
+        }
+    }
+
+    private static void writeTree(Output output, JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            output.put(NULL);
+        } else if (element.isJsonPrimitive()) {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                output.put(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                Number number = primitive.getAsNumber();
+                if (number instanceof Integer || number instanceof Long || number instanceof Short || number instanceof Byte) {
+                    output.putInt(number.longValue());
+                } else {
+                    output.putDouble(number.doubleValue());
+                }
+            } else {
+                output.put(STRING);
+                output.putString(primitive.getAsString());
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray jsonArray = element.getAsJsonArray();
+            output.put(ARRAY);
+            output.putLength(jsonArray.size());
+            for (JsonElement e : jsonArray) {
+                writeTree(output, e);
+            }
+        } else {
+            JsonObject jsonObject = element.getAsJsonObject();
+            output.put(OBJECT);
+            output.putLength(jsonObject.size());
+            for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+                output.putString(entry.getKey());
+                writeTree(output, entry.getValue());
+            }
+        }
+    }
+
+    private static JsonElement readTree(ByteBuffer input) throws IOException {
+        byte tag = input.get();
+        switch (tag) {
+            case NULL:
+                return JsonNull.INSTANCE;
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case INT:
+                return new JsonPrimitive(Varint.unZigZag(Varint.read(input)));
+            case DOUBLE:
+                return new JsonPrimitive(input.getDouble());
+            case STRING:
+                return new JsonPrimitive(readString(input));
+            case ARRAY:
+                JsonArray jsonArray = new JsonArray();
+                for (int i = Varint.readInt(input); i > 0; i--) {
+                    jsonArray.add(readTree(input));
+                }
+                return jsonArray;
+            case OBJECT:
+                JsonObject jsonObject = new JsonObject();
+                for (int i = Varint.readInt(input); i > 0; i--) {
+                    String key = readString(input);
+                    jsonObject.add(key, readTree(input));
+                }
+                return jsonObject;
+            default:
+                throw new IOException("Unknown tag " + tag);
+        }
+    }
+
+    private static String readString(ByteBuffer input) throws IOException {
+        int length = Varint.readInt(input);
+        if (length > input.remaining()) {
+            throw new IOException("Truncated string");
+        }
+        ByteBuffer bytes = input.duplicate();
+        bytes.limit(bytes.position() + length);
+        input.position(input.position() + length);
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+
+    /**
+     * A growable buffer which the payload is written into.
+     */
+    private static class Output {
+        private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+        void put(byte b) {
+            ensure(1);
+            buffer.put(b);
+        }
+
+        void putLength(int length) {
+            ensure(Varint.size(length));
+            Varint.write(buffer, length);
+        }
+
+        void putInt(long value) {
+            long zigZag = Varint.zigZag(value);
+            ensure(1 + Varint.size(zigZag));
+            buffer.put(INT);
+            Varint.write(buffer, zigZag);
+        }
+
+        void putDouble(double value) {
+            ensure(9);
+            buffer.put(DOUBLE);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putLength(bytes.length);
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        byte[] toByteArray() {
+            byte[] bytes = new byte[buffer.position()];
+            System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+
+        private void ensure(int n) {
+            if (buffer.remaining() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + n));
+                buffer.flip();
+                bigger.put(buffer);
+                buffer = bigger;
+            }
+        }
+    }
+}
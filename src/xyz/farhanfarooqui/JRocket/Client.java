@@ -1,26 +1,48 @@
 package xyz.farhanfarooqui.JRocket;
 
-import com.sun.istack.internal.NotNull;
+import org.jetbrains.annotations.NotNull;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents each client connected to the server. Communicate with the client through an instance of this class. A new client object will be created if the client reconnects
- * after disconnecting.
+ * after disconnecting, unless it resumes its session, see {@link JRocketServer#setSessionTimeout(int)}.
  */
 public class Client {
     private String mId;
-    private Communicator mCommunicator;
+    private volatile Connection mConnection;
     private HashMap<String, Object> mDatas;
+    private Set<String> mRooms;
+    private boolean mLeftRooms;
+    private SerialExecutor mDispatcher;
+    private boolean mPeer;
+    private volatile InetAddress mAddress;
+    private volatile Session mSession;
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+    private final LatencyHistogram mDispatchLatency = new LatencyHistogram();
+    private final LatencyHistogram mRoundTripTimes = new LatencyHistogram();
 
-    private Client(String id, Communicator communicator) {
+    private Client(String id, Connection connection, Executor dispatchExecutor, boolean peer, InetAddress address) {
         mId = id;
-        mCommunicator = communicator;
+        mConnection = connection;
+        mPeer = peer;
+        mAddress = address;
         mDatas = new HashMap<>();
+        mRooms = ConcurrentHashMap.newKeySet();
+        mDispatcher = new SerialExecutor(dispatchExecutor);
     }
 
     /**
@@ -30,26 +52,79 @@ public class Client {
      * @param rocketServer    Instance of {@link JRocketServer} with which the client is connected to the server.
      * @param socket          Instance of {@link Socket} over which the client is connected to the server.
      * @param executorService All thread operations are performed on this executor service.
+     * @param peer            Whether it's another node of the {@link Cluster} rather than a client.
      */
-    static Client createClient(String id, JRocketServer rocketServer, Socket socket, ExecutorService executorService) throws IOException {
-        Communicator communicator = new Communicator(rocketServer, socket, executorService);
-        Client client = new Client(id, communicator);
+    static Client createClient(String id, JRocketServer rocketServer, Socket socket, ExecutorService executorService, boolean peer) throws IOException {
+        return createClient(id, new Communicator(rocketServer, socket, executorService), peer, socket.getInetAddress());
+    }
+
+    /**
+     * Creates a client instance for the client which just connected to a server running on {@link Engine#NIO}.
+     *
+     * @param id           Unique Id for each client.
+     * @param rocketServer Instance of {@link JRocketServer} with which the client is connected to the server.
+     * @param channel      Instance of {@link SocketChannel} over which the client is connected to the server.
+     * @param eventLoop    All I/O of the client is performed on this event loop.
+     * @param peer         Whether it's another node of the {@link Cluster} rather than a client.
+     */
+    static Client createClient(String id, JRocketServer rocketServer, SocketChannel channel, EventLoop eventLoop, boolean peer) throws IOException {
+        return createClient(id, new NioConnection(rocketServer, channel, eventLoop), peer, channel.socket().getInetAddress());
+    }
 
-        client.mCommunicator.setClientListener(new ClientListener() {
+    /**
+     * Creates a client for a connection of any kind and starts it. The connection must not be started yet.
+     */
+    static Client createClient(String id, Connection connection) {
+        return createClient(id, connection, false, null);
+    }
+
+    private static Client createClient(String id, Connection connection, boolean peer, InetAddress address) {
+        Client client = new Client(id, connection, ((JRocketServer) connection.getJRocket()).getDispatchExecutor(), peer, address);
+        connection.setClientListener(client.newListener(connection, address));
+        connection.setResponseExecutor(client.mDispatcher);
+        connection.setRoundTripTimes(client.mRoundTripTimes);
+        connection.start();
+        return client;
+    }
+
+    /**
+     * Returns a listener which hands the events of the connection to the server as events of this client.
+     */
+    private ClientListener newListener(final Connection connection, final InetAddress address) {
+        return new ClientListener() {
             @Override
-            public void onEventReceive(JRocket JRocket, String event, JSONObject data) {
-                ((JRocketServer) JRocket).onReceiveEvent(event, data, client);
+            public void onEventReceive(JRocket JRocket, String event, ByteBuffer payload, boolean compressed, Reply reply) throws IOException {
+                ((JRocketServer) JRocket).onReceiveEvent(event, payload, compressed, Client.this, reply);
             }
 
             @Override
-            public void onClientDisconnect(JRocket JRocket) {
-                ((JRocketServer) JRocket).onDisconnect(client);
+            public void onEventReceive(JRocket JRocket, int eventId, ByteBuffer payload, boolean compressed, Reply reply) throws IOException {
+                ((JRocketServer) JRocket).onReceiveEvent(eventId, payload, compressed, Client.this, reply);
             }
-        });
 
-        client.mCommunicator.start();
+            @Override
+            public void onClientDisconnect(JRocket JRocket) {
+                ((JRocketServer) JRocket).onDisconnect(Client.this, connection, address);
+            }
+        };
+    }
 
-        return client;
+    /**
+     * Takes over the connection of a client which resumed the session of this client. The connection is already started.
+     *
+     * @return False if the connection was closed meanwhile.
+     */
+    boolean adopt(Connection connection, InetAddress address) {
+        Connection previous = mConnection;
+        mConnection = connection;
+        if (!connection.replaceClientListener(newListener(connection, address))) {
+            mConnection = previous;
+            return false;
+        }
+        connection.setResponseExecutor(mDispatcher);
+        connection.setRoundTripTimes(mRoundTripTimes);
+        mAddress = address;
+        return true;
     }
 
     /**
@@ -59,6 +134,13 @@ public class Client {
         return mId;
     }
 
+    /**
+     * @return Address the client connected from.
+     */
+    public InetAddress getInetAddress() {
+        return mAddress;
+    }
+
     /**
      * Store client datas with unique keys.
      *
@@ -86,7 +168,200 @@ public class Client {
      * @param data  The data payload which will be sent to the client. Payloads must be stored in JSON format.
      */
     public void send(@NotNull String event, @NotNull JSONObject data) {
-        mCommunicator.send(event, data);
+        send(event, (Object) data);
+    }
+
+    /**
+     * Sends an event to the client with payload.
+     *
+     * @param event The event which will be sent to the client.
+     * @param data  The data payload which will be sent to the client. It's converted by the server's {@link PayloadCodec}.
+     */
+    public void send(@NotNull String event, @NotNull Object data) {
+        Frame frame = getServer().encode(event, data);
+        if (frame != null) {
+            send(frame);
+        }
+    }
+
+    /**
+     * Sends a request to the client and returns the future of its response. The client answers it in a listener which was registered with
+     * {@link JRocketClient#onRequest(String, xyz.farhanfarooqui.JRocket.ClientListeners.OnRequestListener)}. The future completes on the dispatch
+     * executor of this client, and fails if the client disconnects or no response arrives in time.
+     *
+     * @param timeoutMillis Time after which the future fails with a {@link java.util.concurrent.TimeoutException}. Zero means no timeout.
+     */
+    public CompletableFuture<JSONObject> request(@NotNull String event, @NotNull JSONObject data, long timeoutMillis) {
+        return mConnection.request(event, data, JSONObject.class, timeoutMillis);
+    }
+
+    /**
+     * Sends a request to the client and returns the future of its response, decoded into the type by the server's {@link PayloadCodec}.
+     *
+     * @param timeoutMillis Time after which the future fails with a {@link java.util.concurrent.TimeoutException}. Zero means no timeout.
+     */
+    public <T> CompletableFuture<T> request(@NotNull String event, @NotNull Object data, Class<T> type, long timeoutMillis) {
+        return mConnection.request(event, data, type, timeoutMillis);
+    }
+
+    /**
+     * @return Number of events which are queued and not yet written to the client. A growing number means the client can't keep up.
+     */
+    public int getQueueSize() {
+        return mConnection.mQueue.size();
+    }
+
+    /**
+     * @return Number of bytes which are queued and not yet written to the client.
+     */
+    public long getQueuedBytes() {
+        return mConnection.mQueue.bytes();
+    }
+
+    /**
+     * @return Number of events which were dropped because the client's queue was full.
+     */
+    public long getDroppedCount() {
+        return mConnection.mQueue.dropped();
+    }
+
+    /**
+     * @return Number of events, requests and responses which were received from the client.
+     */
+    public long getMessagesReceived() {
+        return mConnection.getMessagesReceived();
+    }
+
+    /**
+     * @return Number of bytes which were received from the client, including heartbeats and the headers of frames.
+     */
+    public long getBytesReceived() {
+        return mConnection.getBytesReceived();
+    }
+
+    /**
+     * @return Number of events, requests and responses which were written to the client.
+     */
+    public long getMessagesSent() {
+        return mConnection.getMessagesSent();
+    }
+
+    /**
+     * @return Number of bytes which were written to the client, including heartbeats and the headers of frames.
+     */
+    public long getBytesSent() {
+        return mConnection.getBytesSent();
+    }
+
+    /**
+     * @return Smoothed round trip time to the client in nanoseconds, measured with the heartbeat pings, or -1 until one was answered. It includes the
+     * time pings wait behind queued events, so it grows when the client can't keep up. Requires {@link JRocketServer#setHeartBeatRate(int)}.
+     */
+    public long getRoundTripTime() {
+        return mConnection.getRoundTripTime();
+    }
+
+    /**
+     * @return Mean deviation of the round trip time to the client in nanoseconds, or -1 until a ping was answered.
+     */
+    public long getRoundTripJitter() {
+        return mConnection.getRoundTripJitter();
+    }
+
+    /**
+     * @return Percentiles of the round trip times to the client, every answered ping is a sample. Unlike {@link #getRoundTripTime()} it shows the
+     * outliers. Requires {@link JRocketServer#setHeartBeatRate(int)}.
+     */
+    public HistogramSnapshot getRoundTripTimes() {
+        return mRoundTripTimes.snapshot();
+    }
+
+    /**
+     * @return Percentiles of the time the events of the client waited from being read until their listener was called.
+     */
+    public HistogramSnapshot getDispatchLatency() {
+        return mDispatchLatency.snapshot();
+    }
+
+    /**
+     * Records the time an event of the client waited for its listener.
+     */
+    void onDispatched(long nanos) {
+        mDispatchLatency.record(nanos);
+    }
+
+    /**
+     * @return Why the client was disconnected, or null while it's connected. While the session of the client is kept for it to resume, it's why the
+     * connection was lost.
+     */
+    public DisconnectReason getDisconnectReason() {
+        return mConnection.getDisconnectReason();
+    }
+
+    /**
+     * @return Whether the connection was lost and the session of the client is kept until it resumes it or the session times out. Events which are
+     * sent meanwhile are delivered once it resumes. See {@link JRocketServer#setSessionTimeout(int)}.
+     */
+    public boolean isParked() {
+        Session session = mSession;
+        return session != null && session.isParked();
+    }
+
+    /**
+     * Whether the connection is the link of another node of the {@link Cluster}, which is never seen by the listeners of the server.
+     */
+    boolean isPeer() {
+        return mPeer;
+    }
+
+    Connection getConnection() {
+        return mConnection;
+    }
+
+    Session getSession() {
+        return mSession;
+    }
+
+    void setSession(Session session) {
+        mSession = session;
+    }
+
+    /**
+     * Marks the client as announced to the listeners and added to the server, which happens once.
+     *
+     * @return False if it was started already.
+     */
+    boolean start() {
+        return mStarted.compareAndSet(false, true);
+    }
+
+    boolean isStarted() {
+        return mStarted.get();
+    }
+
+    /**
+     * Sends a frame which was already encoded, possibly shared with other clients. While the session of the client is parked, the frame is held.
+     */
+    void send(Frame frame) {
+        Session session = mSession;
+        if (session != null) {
+            session.send(frame);
+            return;
+        }
+        mConnection.send(frame);
+    }
+
+    /**
+     * Sends a frame like {@link #send(Frame)}, but never waits for room in the queue. With {@link OverflowPolicy#BLOCK} the
+     * client is disconnected if its queue is full.
+     */
+    void queue(Frame frame) {
+        Session session = mSession;
+        if (session != null) {
+            session.send(frame, false);
+            return;
+        }
+        mConnection.send(frame, false);
     }
 
     /**
@@ -94,20 +369,99 @@ public class Client {
      *
      * @param event The event which will be sent to the clients.
      * @param data  The data payload which will be sent to the clients. Payloads must be stored in JSON format.
+     * @return Completes with the number of clients the event was queued on, see {@link JRocketServer#send(String, JSONObject)}.
+     */
+    public CompletableFuture<Integer> broadCast(@NotNull String event, @NotNull JSONObject data) {
+        return mConnection.broadCast(event, data, this);
+    }
+
+    /**
+     * Event is broadcasted to every client except the calling client
+     *
+     * @param event The event which will be sent to the clients.
+     * @param data  The data payload which will be sent to the clients. It's converted by the server's {@link PayloadCodec}.
+     * @return Completes with the number of clients the event was queued on, see {@link JRocketServer#send(String, JSONObject)}.
+     */
+    public CompletableFuture<Integer> broadCast(@NotNull String event, @NotNull Object data) {
+        return mConnection.broadCast(event, data, this);
+    }
+
+    /**
+     * Adds the client to the room. Events sent to the room with {@link JRocketServer#to(String)} will be sent to the client. Does nothing once the
+     * client is disconnected.
+     *
+     * @param room Name of the room.
+     */
+    public void join(String room) {
+        synchronized (mRooms) {
+            if (!mLeftRooms && mRooms.add(room)) {
+                getServer().join(this, room);
+            }
+        }
+    }
+
+    /**
+     * Removes the client from the room.
+     *
+     * @param room Name of the room.
+     */
+    public void leave(String room) {
+        synchronized (mRooms) {
+            if (mRooms.remove(room)) {
+                getServer().leave(this, room);
+            }
+        }
+    }
+
+    /**
+     * @return Names of the rooms the client is in.
+     */
+    public Set<String> getRooms() {
+        return new HashSet<>(mRooms);
+    }
+
+    /**
+     * Removes the client from all of its rooms for good. Called when the client disconnects.
+     */
+    void leaveAll() {
+        synchronized (mRooms) {
+            mLeftRooms = true;
+            for (String room : mRooms) {
+                leave(room);
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the dispatch executor, after every task which was dispatched before for this client.
      */
-    public void broadCast(@NotNull String event, @NotNull JSONObject data) {
-        mCommunicator.broadCast(event, data, this);
+    void dispatch(Runnable task) {
+        mDispatcher.execute(task);
+    }
+
+    private JRocketServer getServer() {
+        return (JRocketServer) mConnection.getJRocket();
     }
 
     /**
      * Disconnects the client from the server.
      */
     void disconnect() {
-        mCommunicator.close();
+        mConnection.close();
     }
 
     interface ClientListener {
-        void onEventReceive(JRocket JRocket, String event, JSONObject data);
+        /**
+         * @param payload    The encoded payload of the event. Only valid until this method returns.
+         * @param compressed Whether the payload has to be decompressed before it's decoded.
+         * @param reply      The reply if the event is a request, otherwise null.
+         */
+        void onEventReceive(JRocket JRocket, String event, ByteBuffer payload, boolean compressed, Reply reply) throws IOException;
+
+        /**
+         * Called for events which were sent with the id this side announced for them.
+         */
+        void onEventReceive(JRocket JRocket, int eventId, ByteBuffer payload, boolean compressed, Reply reply) throws IOException;
 
         void onClientDisconnect(JRocket JRocket);
     }
@@ -0,0 +1,5 @@
+package xyz.farhanfarooqui.JRocket.ClientListeners;
+
+public interface OnReceiveObjectListener<T> {
+    void onReceive(T data);
+}
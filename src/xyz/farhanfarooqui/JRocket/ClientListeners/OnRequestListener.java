@@ -0,0 +1,8 @@
+package xyz.farhanfarooqui.JRocket.ClientListeners;
+
+import org.json.JSONObject;
+import xyz.farhanfarooqui.JRocket.Reply;
+
+public interface OnRequestListener {
+    void onRequest(JSONObject data, Reply reply);
+}
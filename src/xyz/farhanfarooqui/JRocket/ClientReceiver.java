@@ -3,22 +3,26 @@ package xyz.farhanfarooqui.JRocket;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.concurrent.ExecutorService;
 
 /**
  * ClientReceiver handles new Socket connections
- * it accepts a connection, and creates a Communicator for that.
+ * it accepts a connection, checks it against the limits of the server, and hands it off to be set up as a Client, so
+ * the next connection is accepted right away. The receiver of the cluster port accepts the links of the other nodes instead.
  */
 
 class ClientReceiver extends Thread {
     private ServerSocket serverSocket;
     private JRocketServer rocketServer;
-    private ExecutorService executorService;
+    private boolean peers;
 
-    ClientReceiver(JRocketServer rocketServer, ServerSocket serverSocket, ExecutorService executorService) {
+    ClientReceiver(JRocketServer rocketServer, ServerSocket serverSocket) {
+        this(rocketServer, serverSocket, false);
+    }
+
+    ClientReceiver(JRocketServer rocketServer, ServerSocket serverSocket, boolean peers) {
         this.serverSocket = serverSocket;
         this.rocketServer = rocketServer;
-        this.executorService = executorService;
+        this.peers = peers;
     }
 
     @Override
@@ -26,16 +30,38 @@ class ClientReceiver extends Thread {
         super.run();
         while (!serverSocket.isClosed()) {
             try {
-                long t1 = System.currentTimeMillis();
                 Socket socket = serverSocket.accept();
-                socket.setSoTimeout(rocketServer.getHeartBeatRate());
-                Client client = Client.createClient(Utils.createID(), rocketServer, socket, executorService);
-                System.out.println(System.currentTimeMillis() - t1);
-                rocketServer.onConnect(client);
+                if (peers) {
+                    rocketServer.onPeerConnect(rocketServer.createClient(socket, true));
+                    continue;
+                }
+                long accepted = System.nanoTime();
+                if (rocketServer.admit(socket)) {
+                    rocketServer.setUp(socket, accepted);
+                } else {
+                    reject(socket);
+                }
             } catch (IOException e) {
-                e.printStackTrace();
-                rocketServer.onServerStop();
+                if (serverSocket.isClosed()) {
+                    if (!peers) {
+                        rocketServer.onServerStop();
+                    }
+                } else {
+                    e.printStackTrace();
+                }
             }
         }
     }
+
+    /**
+     * Closes the socket with a reset, so the rejected connection doesn't linger in TIME_WAIT on the server.
+     */
+    private static void reject(Socket socket) {
+        try {
+            socket.setSoLinger(true, 0);
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 }
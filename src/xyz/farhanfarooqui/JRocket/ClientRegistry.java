@@ -0,0 +1,126 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ClientRegistry keeps the connected clients of a server, keyed by their id. Adding, removing and looking up a client
+ * are O(1) and safe from any thread.
+ * <br>
+ * Fan-out iterates over {@link #snapshot()}, an immutable array of the clients, or over {@link #partitions(int)} of it.
+ * They are rebuilt lazily after the set of clients changed, so broadcasts never lock and never see a half-updated set.
+ */
+
+class ClientRegistry {
+    private final ConcurrentHashMap<String, Client> mClients;
+    private final AtomicLong mVersion;
+    private volatile Snapshot mSnapshot;
+
+    ClientRegistry() {
+        mClients = new ConcurrentHashMap<>();
+        mVersion = new AtomicLong();
+    }
+
+    void add(Client client) {
+        mClients.put(client.getId(), client);
+        mVersion.incrementAndGet();
+    }
+
+    /**
+     * @return true if the client was registered.
+     */
+    boolean remove(Client client) {
+        if (mClients.remove(client.getId(), client)) {
+            mVersion.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    Client get(String id) {
+        return mClients.get(id);
+    }
+
+    int size() {
+        return mClients.size();
+    }
+
+    boolean isEmpty() {
+        return mClients.isEmpty();
+    }
+
+    /**
+     * Returns the clients which are currently registered. The array must not be modified.
+     */
+    Client[] snapshot() {
+        return currentSnapshot().clients;
+    }
+
+    /**
+     * Returns the clients which are currently registered, split into partitions by the hash of their id. A client is
+     * always in the same partition for the same number of partitions. The arrays must not be modified.
+     */
+    Client[][] partitions(int count) {
+        Snapshot snapshot = currentSnapshot();
+        Client[][] partitions = snapshot.partitions;
+        if (partitions != null && partitions.length == count) {
+            return partitions;
+        }
+        int[] sizes = new int[count];
+        for (Client client : snapshot.clients) {
+            sizes[partition(client, count)]++;
+        }
+        partitions = new Client[count][];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Client[sizes[i]];
+            sizes[i] = 0;
+        }
+        for (Client client : snapshot.clients) {
+            int partition = partition(client, count);
+            partitions[partition][sizes[partition]++] = client;
+        }
+        snapshot.partitions = partitions;
+        return partitions;
+    }
+
+    private static int partition(Client client, int count) {
+        return Math.floorMod(client.hashCode(), count);
+    }
+
+    private Snapshot currentSnapshot() {
+        long version = mVersion.get();
+        Snapshot snapshot = mSnapshot;
+        if (snapshot != null && snapshot.version == version) {
+            return snapshot;
+        }
+        snapshot = new Snapshot(version, mClients.values().toArray(new Client[0]));
+        if (mVersion.get() == version) {
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Queues the frame on every registered client except the given one.
+     *
+     * @param except Client which is skipped, or null.
+     */
+    void send(Frame frame, Client except) {
+        for (Client client : snapshot()) {
+            if (client != except) {
+                client.send(frame);
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final long version;
+        private final Client[] clients;
+        private volatile Client[][] partitions;
+
+        Snapshot(long version, Client[] clients) {
+            this.version = version;
+            this.clients = clients;
+        }
+    }
+}
@@ -0,0 +1,588 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import xyz.farhanfarooqui.JRocket.ClientListeners.OnReceiveListener;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cluster connects the server to other JRocket servers, the nodes of the cluster. Join a cluster with
+ * {@link JRocketServer#joinCluster(String, int, String)} and add the other nodes with {@link #addPeer(String, int)} on every node.
+ * <br>
+ * Every node connects to every peer it was given with a {@link JRocketClient}, the link, and accepts the links of the other nodes on its
+ * cluster port. Events which are sent to every client with {@link JRocketServer#send(String, Object)} or a broadcast, or to a room with
+ * {@link Room#send(String, Object)}, are relayed once over every link and then sent to the local clients of each node. The payload is
+ * encoded once on the node which sent it and forwarded as it is, so every node has to use the same {@link PayloadCodec}.
+ * <br>
+ * Nodes also tell each other which clients are connected to them, so a client can be found and sent to with {@link #send(String, String, Object)}
+ * whichever node it's connected to.
+ * <br>
+ * The secret never goes over the network. A node challenges every link with a random nonce, and the link answers with an HMAC-SHA256 of it
+ * keyed with the secret, along with a nonce of its own which the node answers the same way. Links aren't encrypted though, so the events
+ * they relay can be read on the network between the nodes.
+ */
+
+public final class Cluster {
+    private static final String CHALLENGE = "$cluster.challenge";
+    private static final String HELLO = "$cluster.hello";
+    private static final String CLIENTS = "$cluster.clients";
+    private static final String JOIN = "$cluster.join";
+    private static final String LEAVE = "$cluster.leave";
+    private static final String BROADCAST = "$cluster.broadcast";
+    private static final String SEND = "$cluster.send";
+    private static final long HELLO_TIMEOUT_MILLIS = 5000;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final String HMAC = "HmacSHA256";
+    private static final int NONCE_SIZE = 16;
+    /**
+     * What the proof of a link and the proof of the node it linked to are signed for, so one can't be passed off as the other.
+     */
+    private static final String LINK_PROOF = "link";
+    private static final String NODE_PROOF = "node";
+
+    private static final SecureRandom sRandom = new SecureRandom();
+
+    private final JRocketServer mServer;
+    private final String mNodeId;
+    private final SecretKeySpec mKey;
+    private final ServerSocket mServerSocket;
+    private final EventTable mEventTable = new EventTable();
+    private final Set<PeerLink> mPeerLinks = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, PeerLink> mLinks = new ConcurrentHashMap<>();
+    private final Set<Client> mInbound = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<Client, String> mPeers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Client, byte[]> mChallenges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> mDirectory = new ConcurrentHashMap<>();
+    private final Object mLock = new Object();
+    private volatile boolean mClosed;
+
+    Cluster(JRocketServer server, String nodeId, String secret, ServerSocket serverSocket) {
+        mServer = server;
+        mNodeId = nodeId;
+        mKey = newKey(secret);
+        mServerSocket = serverSocket;
+
+        addEventHandler(HELLO, new EventHandler(JSONObject.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onHello((JSONObject) data, client, reply);
+            }
+        });
+        addEventHandler(CLIENTS, new EventHandler(JSONObject.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onClients((JSONObject) data, client);
+            }
+        });
+        addEventHandler(JOIN, new EventHandler(JSONObject.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                String node = mPeers.get(client);
+                if (node != null) {
+                    mDirectory.put(((JSONObject) data).optString("id"), node);
+                }
+            }
+        });
+        addEventHandler(LEAVE, new EventHandler(JSONObject.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                String node = mPeers.get(client);
+                if (node != null) {
+                    mDirectory.remove(((JSONObject) data).optString("id"), node);
+                }
+            }
+        });
+        addEventHandler(BROADCAST, new EventHandler(Payload.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onRelay((Payload) data, client, false);
+            }
+        });
+        addEventHandler(SEND, new EventHandler(Payload.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onRelay((Payload) data, client, true);
+            }
+        });
+    }
+
+    private void addEventHandler(String event, EventHandler handler) {
+        handler.setCounters(mServer.getMetrics().event(event));
+        mEventTable.put(event, handler);
+    }
+
+    /**
+     * @return Id of this node.
+     */
+    public String getNodeId() {
+        return mNodeId;
+    }
+
+    /**
+     * @return Port on which this node accepts the links of other nodes.
+     */
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Connects to the node which listens for other nodes on the host and port. The link reconnects by itself if it's lost, until the server stops.
+     * Every node has to add every other node, a link only carries events from this node to the peer.
+     */
+    public void addPeer(String host, int port) {
+        PeerLink link = new PeerLink(host, port);
+        mPeerLinks.add(link);
+        link.connect();
+    }
+
+    /**
+     * @return Ids of the nodes this node is linked to.
+     */
+    public Set<String> getNodes() {
+        return new HashSet<>(mLinks.keySet());
+    }
+
+    /**
+     * Returns the id of the node the client is connected to, or null if no node knows the client.
+     */
+    public String locate(String clientId) {
+        if (mServer.getClient(clientId) != null) {
+            return mNodeId;
+        }
+        return mDirectory.get(clientId);
+    }
+
+    /**
+     * @return Number of clients which are connected to this node and the nodes which are linked to it.
+     */
+    public int getClientCount() {
+        return mServer.getClientCount() + mDirectory.size();
+    }
+
+    /**
+     * Sends an event to the client with the id, whichever node it's connected to.
+     *
+     * @param data The data payload which will be sent to the client. It's converted by the server's {@link PayloadCodec}.
+     * @return False if no node knows the client.
+     */
+    public boolean send(String clientId, String event, Object data) throws IOException {
+        Client client = mServer.getClient(clientId);
+        if (client != null) {
+            client.send(event, data);
+            return true;
+        }
+        String node = mDirectory.get(clientId);
+        PeerLink link = node != null ? mLinks.get(node) : null;
+        if (link == null) {
+            return false;
+        }
+        return link.mClient.send(SEND, envelope(clientId, event, encode(data).array()));
+    }
+
+    /**
+     * Relays an event to every node which is linked to this node, so it's sent to their clients of the room, or to all of their clients if the
+     * room is null.
+     *
+     * @return The data encoded once, so it isn't encoded again for the local clients.
+     */
+    Object relay(String room, String event, Object data) throws IOException {
+        if (mLinks.isEmpty()) {
+            return data;
+        }
+        Payload payload = encode(data);
+        Payload envelope = envelope(room, event, payload.array());
+        for (PeerLink link : mLinks.values()) {
+            link.mClient.send(BROADCAST, envelope);
+        }
+        return payload;
+    }
+
+    private Payload encode(Object data) throws IOException {
+        if (data instanceof Payload) {
+            return (Payload) data;
+        }
+        return new Payload(mServer.getPayloadCodec().encode(data), mServer.getPayloadCodec());
+    }
+
+    /**
+     * Wraps the payload with the room or client it's for and its event. Both are prefixed with their length, a length of 0 means null.
+     */
+    private Payload envelope(String target, String event, byte[] payload) {
+        byte[] targetBytes = target != null ? target.getBytes(StandardCharsets.UTF_8) : null;
+        byte[] eventBytes = event.getBytes(StandardCharsets.UTF_8);
+        int targetLength = targetBytes != null ? targetBytes.length + 1 : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(Varint.size(targetLength) + Math.max(targetLength - 1, 0) + Varint.size(eventBytes.length)
+                + eventBytes.length + payload.length);
+        Varint.write(buffer, targetLength);
+        if (targetBytes != null) {
+            buffer.put(targetBytes);
+        }
+        Varint.write(buffer, eventBytes.length);
+        buffer.put(eventBytes);
+        buffer.put(payload);
+        return new Payload(buffer.array(), mServer.getPayloadCodec());
+    }
+
+    private static String readString(ByteBuffer buffer, int length) throws IOException {
+        if (length > buffer.remaining()) {
+            throw new IOException("Truncated envelope");
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Sends an event which a node relayed to the local clients, without relaying it again.
+     */
+    private void onRelay(Payload envelope, Client client, boolean targeted) {
+        if (!mPeers.containsKey(client)) {
+            return;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(envelope.array());
+            int targetLength = Varint.readInt(buffer);
+            String target = targetLength > 0 ? readString(buffer, targetLength - 1) : null;
+            String event = readString(buffer, Varint.readInt(buffer));
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            Payload payload = new Payload(bytes, mServer.getPayloadCodec());
+            if (targeted) {
+                Client receiver = mServer.getClient(target);
+                if (receiver != null) {
+                    receiver.send(event, payload);
+                }
+            } else {
+                mServer.fanOut(target, event, payload);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Accepts the link if it signed the challenge it was sent with the secret, and proves to it that this node knows the secret too.
+     */
+    private void onHello(JSONObject data, Client client, Reply reply) {
+        String node = data.optString("node", null);
+        byte[] challenge = mChallenges.remove(client);
+        byte[] proof = decode(data.optString("proof", null));
+        byte[] nonce = decode(data.optString("nonce", null));
+        if (node == null || node.equals(mNodeId) || challenge == null || proof == null || nonce == null
+                || !MessageDigest.isEqual(proof, sign(LINK_PROOF, challenge, node))) {
+            client.disconnect();
+            return;
+        }
+        mPeers.put(client, node);
+        try {
+            reply.send(new JSONObject().put("node", mNodeId).put("proof", encode(sign(NODE_PROOF, nonce, mNodeId))));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * The key of the HMACs is a hash of the secret, so secrets of any length, even empty ones, make a valid key.
+     */
+    private static SecretKeySpec newKey(String secret) {
+        try {
+            return new SecretKeySpec(MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8)), HMAC);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("SHA-256 isn't available", e);
+        }
+    }
+
+    /**
+     * Signs the nonce and the id of the node which proves it knows the secret.
+     */
+    private byte[] sign(String purpose, byte[] nonce, String node) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(mKey);
+            mac.update(purpose.getBytes(StandardCharsets.UTF_8));
+            mac.update(nonce);
+            return mac.doFinal(node.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC + " isn't available", e);
+        }
+    }
+
+    private static byte[] newNonce() {
+        byte[] nonce = new byte[NONCE_SIZE];
+        sRandom.nextBytes(nonce);
+        return nonce;
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getEncoder().encodeToString(bytes);
+    }
+
+    /**
+     * @return The bytes, or null if the value is missing or isn't Base64.
+     */
+    private static byte[] decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the clients of the node with the ones it sent right after it linked.
+     */
+    private void onClients(JSONObject data, Client client) {
+        String node = mPeers.get(client);
+        if (node == null) {
+            return;
+        }
+        removeClients(node);
+        JSONArray ids = data.optJSONArray("ids");
+        if (ids != null) {
+            for (int i = 0; i < ids.length(); i++) {
+                mDirectory.put(ids.optString(i), node);
+            }
+        }
+    }
+
+    private void removeClients(String node) {
+        Iterator<Map.Entry<String, String>> iterator = mDirectory.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().equals(node)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Called when a node linked to this node. It's told the ids of the events of the cluster and sent a challenge, and it can't send anything but
+     * the hello until it proved it knows the secret.
+     */
+    void onPeerConnect(Client client) {
+        if (mClosed) {
+            client.disconnect();
+            return;
+        }
+        mInbound.add(client);
+        client.send(mEventTable.toFrame());
+        byte[] challenge = newNonce();
+        mChallenges.put(client, challenge);
+        try {
+            client.send(CHALLENGE, new JSONObject().put("nonce", encode(challenge)));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            client.disconnect();
+        }
+    }
+
+    void onPeerDisconnect(Client client) {
+        mInbound.remove(client);
+        mChallenges.remove(client);
+        String node = mPeers.remove(client);
+        if (node != null && !mPeers.containsValue(node)) {
+            removeClients(node);
+        }
+    }
+
+    /**
+     * Tells the other nodes that the client connected to this node.
+     */
+    void onClientConnect(Client client) {
+        sendToLinks(JOIN, client.getId());
+    }
+
+    void onClientDisconnect(Client client) {
+        sendToLinks(LEAVE, client.getId());
+    }
+
+    private void sendToLinks(String event, String clientId) {
+        if (mLinks.isEmpty()) {
+            return;
+        }
+        try {
+            JSONObject data = new JSONObject().put("id", clientId);
+            synchronized (mLock) {
+                for (PeerLink link : mLinks.values()) {
+                    link.mClient.send(event, data);
+                }
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    EventTable getEventTable() {
+        return mEventTable;
+    }
+
+    /**
+     * Closes the cluster port and every link. Called when the server stops.
+     */
+    void close() {
+        mClosed = true;
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (PeerLink link : mPeerLinks) {
+            link.mClient.disconnect();
+        }
+        for (Client client : mInbound) {
+            client.disconnect();
+        }
+        mLinks.clear();
+        mDirectory.clear();
+    }
+
+    /**
+     * The link to one peer. A new {@link JRocketClient} is connected every time the link is lost.
+     */
+    private final class PeerLink implements JRocketClient.RocketClientListener {
+        private final String mHost;
+        private final int mPort;
+        private volatile JRocketClient mClient;
+        private volatile String mNode;
+
+        PeerLink(String host, int port) {
+            mHost = host;
+            mPort = port;
+        }
+
+        void connect() {
+            if (mClosed) {
+                return;
+            }
+            final JRocketClient client = JRocketClient.prepare(mHost, mPort, this);
+            client.onReceive(CHALLENGE, new OnReceiveListener() {
+                @Override
+                public void onReceive(JSONObject data) {
+                    onChallenge(client, data);
+                }
+            }, true);
+            client.setEngine(Engine.NIO);
+            client.setSessionsEnabled(false);
+            client.setHeartBeatRate(mServer.getHeartBeatRate());
+            client.setTcpNoDelay(mServer.getTcpNoDelay());
+            client.setPayloadCodec(mServer.getPayloadCodec());
+            client.setCompressionThreshold(mServer.getCompressionThreshold());
+            client.setCompressionDictionary(mServer.getCompressionDictionary());
+            mClient = client;
+            client.connect();
+        }
+
+        private void reconnect() {
+            if (mClosed) {
+                return;
+            }
+            HashedWheelTimer.shared().newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    connect();
+                }
+            }, RECONNECT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void onConnect(JRocketClient rocketClient) {
+            // The hello is sent once the node sent its challenge
+        }
+
+        /**
+         * Proves to the node that this node knows the secret, and checks that the node knows it too before the link is used.
+         */
+        private void onChallenge(final JRocketClient rocketClient, JSONObject data) {
+            byte[] challenge = decode(data.optString("nonce", null));
+            if (challenge == null) {
+                rocketClient.disconnect();
+                return;
+            }
+            final byte[] nonce = newNonce();
+            JSONObject hello;
+            try {
+                hello = new JSONObject().put("node", mNodeId).put("proof", encode(sign(LINK_PROOF, challenge, mNodeId))).put("nonce", encode(nonce));
+            } catch (JSONException e) {
+                e.printStackTrace();
+                rocketClient.disconnect();
+                return;
+            }
+            rocketClient.request(HELLO, hello, HELLO_TIMEOUT_MILLIS).whenComplete(new BiConsumer<JSONObject, Throwable>() {
+                @Override
+                public void accept(JSONObject response, Throwable throwable) {
+                    if (throwable != null || mClosed) {
+                        rocketClient.disconnect();
+                        return;
+                    }
+                    String node = response.optString("node", null);
+                    byte[] proof = decode(response.optString("proof", null));
+                    if (node == null || proof == null || !MessageDigest.isEqual(proof, sign(NODE_PROOF, nonce, node))) {
+                        rocketClient.disconnect();
+                        return;
+                    }
+                    register(rocketClient, node);
+                }
+            });
+        }
+
+        /**
+         * Makes the link available for relays and sends the clients of this node, which are then kept up to date with joins and leaves.
+         */
+        private void register(JRocketClient rocketClient, String node) {
+            synchronized (mLock) {
+                if (rocketClient != mClient || !rocketClient.isConnected()) {
+                    return;
+                }
+                mNode = node;
+                mLinks.put(node, this);
+                JSONArray ids = new JSONArray();
+                for (Client client : mServer.clients()) {
+                    ids.put(client.getId());
+                }
+                try {
+                    rocketClient.send(CLIENTS, new JSONObject().put("ids", ids));
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        @Override
+        public void onConnectFailed(JRocketClient rocketClient) {
+            reconnect();
+        }
+
+        @Override
+        public void onDisconnect(JRocketClient rocketClient) {
+            synchronized (mLock) {
+                String node = mNode;
+                if (node != null) {
+                    mLinks.remove(node, this);
+                    mNode = null;
+                }
+            }
+            reconnect();
+        }
+    }
+}
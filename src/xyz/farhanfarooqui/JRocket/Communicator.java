@@ -1,51 +1,41 @@
 package xyz.farhanfarooqui.JRocket;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.*;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.concurrent.*;
-
-import static xyz.farhanfarooqui.JRocket.Constants.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Communicator class handles all the I/O between the client
  * and the Server.
  */
 
-class Communicator {
-    private JRocket mJRocket;
+class Communicator extends Connection {
     private Socket mSocket;
     private Receiver mReceiver;
     private Sender mSender;
     private boolean hasRun = false;
-    private Client.ClientListener mClientListener;
     private ExecutorService mExecutorService;
-    private volatile boolean running;
-    private LinkedBlockingQueue<JSONObject> mQueue;
-
-    void setClientListener(Client.ClientListener clientListener) {
-        this.mClientListener = clientListener;
-    }
+    private final AtomicBoolean running = new AtomicBoolean();
 
     Communicator(JRocket JRocket, Socket socket, ExecutorService executorService) throws IOException {
-        mJRocket = JRocket;
+        super(JRocket);
         mSocket = socket;
+        mSocket.setTcpNoDelay(JRocket.getTcpNoDelay());
         mExecutorService = executorService;
         mReceiver = new Receiver(socket);
         mSender = new Sender(socket);
-        mQueue = new LinkedBlockingQueue<>();
-    }
-
-    private JRocket getJRocket() {
-        return mJRocket;
     }
 
+    @Override
     void start() {
         if (!hasRun) {
+            hasRun = true;
+            // Set before the tasks run, so a receiver which fails right away can close the connection
+            running.set(true);
+            startIdleTimer();
             try {
                 mExecutorService.execute(mSender);
                 mExecutorService.execute(mReceiver);
@@ -53,66 +43,85 @@ class Communicator {
                 e.printStackTrace();
                 disconnect();
             }
-            this.running = true;
-            hasRun = true;
         }
     }
 
+    @Override
     void close() {
+        setDisconnectReason(DisconnectReason.CLOSED);
         disconnect();
     }
 
     /**
-     * Broadcasts to other clients
-     * <br>
-     * PS. broadcasts to <b>all of the clients except the client who's broadcasting</b>.
+     * Shuts down the input of the socket, so the receiver reads the end of the stream and closes the connection on its thread.
      */
-
-    void broadCast(String event, JSONObject data, Client client) {
-        ((JRocketServer) getJRocket()).broadCast(event, data, client);
+    @Override
+    void closeLater(DisconnectReason reason) {
+        setDisconnectReason(reason);
+        try {
+            mSocket.shutdownInput();
+        } catch (IOException e) {
+            // Already closed
+            e.printStackTrace();
+        }
     }
 
     /**
-     * Sends data
+     * Nothing to do after a frame was queued, the sender wakes up when it's added to the queue.
      */
-    void send(String event, JSONObject data) {
-        try {
-            JSONObject jsonObject = new JSONObject();
-            jsonObject.put(EVENT, event);
-            jsonObject.put(DATA, data);
-            mQueue.put(jsonObject);
-        } catch (JSONException | InterruptedException e) {
-            e.printStackTrace();
-        }
+    @Override
+    void onFrameQueued() {
+        // The sender is already waiting on the queue
     }
 
+    /**
+     * Sender and Receiver only use the socket's raw streams. The readers and writers of java.io guard every call with
+     * a monitor, which would pin a virtual thread to its carrier while it is blocked on the socket.
+     */
+
     private class Sender implements Runnable {
 
         private Socket socket;
-        private OutputStreamWriter outputStreamWriter;
+        private OutputStream outputStream;
+        private ArrayList<Frame> batch;
+        private ByteBuffer batchBuffer;
 
         Sender(Socket socket) throws IOException {
             this.socket = socket;
-            outputStreamWriter = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            outputStream = socket.getOutputStream();
+            batch = new ArrayList<>();
+            batchBuffer = ByteBuffer.allocate(0);
         }
 
         @Override
         public void run() {
             while (!socket.isClosed()) {
                 try {
-                    JSONObject jsonObject = mQueue.poll(mJRocket.getHeartBeatRate(), TimeUnit.MILLISECONDS);
+                    Frame frame = mQueue.take();
 
-                    if (jsonObject == null) {
-                        send("heartbeat", new JSONObject());
-                        continue;
+                    if (frame == null) {
+                        break;
                     }
 
-                    outputStreamWriter.write(jsonObject.toString().length());
-                    outputStreamWriter.write(jsonObject.toString());
-                    outputStreamWriter.flush();
+                    int bytes = collectBatch(frame);
+                    if (batch.size() == 1) {
+                        frame.writeTo(outputStream);
+                    } else {
+                        if (batchBuffer.capacity() < bytes) {
+                            batchBuffer = ByteBuffer.allocate(bytes);
+                        }
+                        batchBuffer.clear();
+                        for (Frame f : batch) {
+                            f.writeTo(batchBuffer);
+                        }
+                        outputStream.write(batchBuffer.array(), 0, batchBuffer.position());
+                    }
+                    outputStream.flush();
+                    batch.clear();
                 } catch (IOException e) {
+                    setDisconnectReason(DisconnectReason.IO_ERROR);
                     try {
-                        outputStreamWriter.close();
+                        outputStream.close();
                     } catch (IOException e1) {
                         e1.printStackTrace();
                     }
@@ -124,57 +133,77 @@ class Communicator {
             }
             disconnect();
         }
+
+        /**
+         * Drains the queue into the batch until the batch is full. Waits up to the max write delay for more frames to arrive.
+         *
+         * @return Number of bytes in the batch.
+         */
+        private int collectBatch(Frame first) throws InterruptedException {
+            int maxBytes = getJRocket().getMaxWriteBatchSize();
+            int maxDelay = getJRocket().getMaxWriteDelay();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+
+            batch.add(first);
+            onFrameWritten(first);
+            int bytes = first.length();
+            while (bytes < maxBytes) {
+                Frame frame = mQueue.poll();
+                if (frame == null && maxDelay > 0) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait > 0) {
+                        frame = mQueue.poll(wait, TimeUnit.NANOSECONDS);
+                    }
+                }
+                if (frame == null) {
+                    break;
+                }
+                batch.add(frame);
+                onFrameWritten(frame);
+                bytes += frame.length();
+            }
+            return bytes;
+        }
     }
 
     private class Receiver implements Runnable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
         private Socket socket;
-        private BufferedReader bufferedReader;
+        private InputStream inputStream;
+        private FrameDecoder frameDecoder;
 
         Receiver(Socket socket) throws IOException {
             this.socket = socket;
-            bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            inputStream = socket.getInputStream();
+            frameDecoder = new FrameDecoder(Communicator.this);
         }
 
         @Override
         public void run() {
-            StringBuilder stringBuilder = new StringBuilder();
-            int retry = 0;
+            byte[] bytes = new byte[BUFFER_SIZE];
 
             while (!socket.isClosed()) {
                 try {
-
-                    if (retry > 2) {
-                        throw new IOException("Maximum retries reached");
-                    }
-
-                    int c;
-                    char ch;
-                    int length = bufferedReader.read();
-                    for (int i = 0; i < length; i++) {
-                        c = bufferedReader.read();
-                        ch = (char) c;
-                        stringBuilder.append(ch);
+                    int read = inputStream.read(bytes);
+                    if (read < 0) {
+                        setDisconnectReason(DisconnectReason.PEER_CLOSED);
+                        throw new IOException("Connection closed by peer");
                     }
+                    onBytesRead();
 
-                    JSONObject jsonObject = new JSONObject(stringBuilder.toString());
-                    String event = jsonObject.getString(EVENT);
-                    JSONObject data = jsonObject.getJSONObject(DATA);
-
-                    mClientListener.onEventReceive(getJRocket(), event, data);
-                    stringBuilder.setLength(0);
-                    retry = 0;
-                } catch (SocketTimeoutException s) {
-                    retry++;
-                    System.out.println("Time out on read. Trying again  " + retry);
+                    decode(frameDecoder, ByteBuffer.wrap(bytes, 0, read));
                 } catch (IOException e) {
+                    setDisconnectReason(DisconnectReason.IO_ERROR);
                     try {
-                        bufferedReader.close();
+                        inputStream.close();
                     } catch (IOException e1) {
                         e1.printStackTrace();
                     }
                     e.printStackTrace();
                     break;
-                } catch (JSONException e) {
+                } catch (RuntimeException e) {
+                    // decode() already set the reason, the connection is closed below like after an I/O error
                     e.printStackTrace();
                     break;
                 }
@@ -183,8 +212,14 @@ class Communicator {
         }
     }
 
+    /**
+     * Closes the connection once, whether the receiver, the sender or a caller gets here first.
+     */
     private void disconnect() {
-        if (running) {
+        if (running.compareAndSet(true, false)) {
+            stopIdleTimer();
+            closeQueue();
+            failPendingRequests();
             if (!mSocket.isClosed()) {
                 try {
                     mSocket.close();
@@ -192,8 +227,7 @@ class Communicator {
                     e.printStackTrace();
                 }
             }
-            mClientListener.onClientDisconnect(getJRocket());
-            running = false;
+            onClosed();
         }
     }
 }
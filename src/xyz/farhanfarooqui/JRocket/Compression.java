@@ -0,0 +1,137 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses payloads with deflate. Deflaters and inflaters hold native memory and are expensive to create, so they are
+ * pooled and shared by every connection instead of being created for each frame.
+ */
+
+final class Compression {
+    private static final int MAX_POOLED = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final ConcurrentLinkedQueue<Deflater> sDeflaters = new ConcurrentLinkedQueue<>();
+    private static final ConcurrentLinkedQueue<Inflater> sInflaters = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger sPooledDeflaters = new AtomicInteger();
+    private static final AtomicInteger sPooledInflaters = new AtomicInteger();
+
+    private Compression() {
+    }
+
+    /**
+     * Compresses the payload if it's at least threshold bytes long.
+     *
+     * @param threshold  Minimum size of payloads which are compressed. Zero disables compression.
+     * @param dictionary Preset dictionary, or null.
+     * @return The compressed payload, or null if it's too small or didn't get smaller.
+     */
+    static byte[] deflate(byte[] payload, int threshold, byte[] dictionary, CompressionStats stats) {
+        if (threshold <= 0 || payload.length < threshold) {
+            return null;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = sDeflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater();
+        } else {
+            sPooledDeflaters.decrementAndGet();
+        }
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(payload);
+            deflater.finish();
+            byte[] out = new byte[payload.length];
+            int length = 0;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (!deflater.finished()) {
+                stats.onSkipped(payload.length, System.nanoTime() - start);
+                return null;
+            }
+            stats.onDeflated(payload.length, length, System.nanoTime() - start);
+            return Arrays.copyOf(out, length);
+        } finally {
+            deflater.reset();
+            if (sPooledDeflaters.incrementAndGet() <= MAX_POOLED) {
+                sDeflaters.offer(deflater);
+            } else {
+                sPooledDeflaters.decrementAndGet();
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Decompresses a payload which was compressed by {@link #deflate(byte[], int, byte[], CompressionStats)}.
+     *
+     * @param dictionary The same preset dictionary the sender used, or null.
+     */
+    static ByteBuffer inflate(ByteBuffer payload, byte[] dictionary, CompressionStats stats) throws IOException {
+        long start = System.nanoTime();
+        byte[] in = new byte[payload.remaining()];
+        payload.get(in);
+        Inflater inflater = sInflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        } else {
+            sPooledInflaters.decrementAndGet();
+        }
+        try {
+            inflater.setInput(in);
+            byte[] out = new byte[Math.min(Math.max(64, in.length * 4), FrameCodec.MAX_FRAME_LENGTH)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == out.length) {
+                    if (out.length >= FrameCodec.MAX_FRAME_LENGTH) {
+                        throw new IOException("Decompressed payload too large");
+                    }
+                    out = Arrays.copyOf(out, Math.min(out.length * 2, FrameCodec.MAX_FRAME_LENGTH));
+                }
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new IOException("Payload was compressed with a dictionary, but none is set");
+                        }
+                        if ((inflater.getAdler() & 0xFFFFFFFFL) != adler(dictionary)) {
+                            throw new IOException("Payload was compressed with a different dictionary");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("Truncated compressed payload");
+                    }
+                }
+                length += n;
+            }
+            stats.onInflated(in.length, length, System.nanoTime() - start);
+            return ByteBuffer.wrap(out, 0, length);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.reset();
+            if (sPooledInflaters.incrementAndGet() <= MAX_POOLED) {
+                sInflaters.offer(inflater);
+            } else {
+                sPooledInflaters.decrementAndGet();
+                inflater.end();
+            }
+        }
+    }
+
+    private static long adler(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return adler.getValue();
+    }
+}
@@ -0,0 +1,109 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how well compression works, to help choosing the compression threshold. Get it with
+ * {@link JRocketServer#getCompressionStats()} and {@link JRocketClient#getCompressionStats()}. Times are measured on the
+ * thread which compressed or decompressed the payload.
+ */
+
+public final class CompressionStats {
+    private final LongAdder mCompressedFrames = new LongAdder();
+    private final LongAdder mSkippedFrames = new LongAdder();
+    private final LongAdder mBytesBeforeCompression = new LongAdder();
+    private final LongAdder mBytesAfterCompression = new LongAdder();
+    private final LongAdder mCompressNanos = new LongAdder();
+    private final LongAdder mDecompressedFrames = new LongAdder();
+    private final LongAdder mBytesBeforeDecompression = new LongAdder();
+    private final LongAdder mBytesAfterDecompression = new LongAdder();
+    private final LongAdder mDecompressNanos = new LongAdder();
+
+    CompressionStats() {
+    }
+
+    void onDeflated(int before, int after, long nanos) {
+        mCompressedFrames.increment();
+        mBytesBeforeCompression.add(before);
+        mBytesAfterCompression.add(after);
+        mCompressNanos.add(nanos);
+    }
+
+    void onSkipped(int before, long nanos) {
+        mSkippedFrames.increment();
+        mCompressNanos.add(nanos);
+    }
+
+    void onInflated(int before, int after, long nanos) {
+        mDecompressedFrames.increment();
+        mBytesBeforeDecompression.add(before);
+        mBytesAfterDecompression.add(after);
+        mDecompressNanos.add(nanos);
+    }
+
+    /**
+     * Number of payloads which were sent compressed.
+     */
+    public long getCompressedFrames() {
+        return mCompressedFrames.sum();
+    }
+
+    /**
+     * Number of payloads above the threshold which were sent uncompressed, because compressing didn't make them smaller.
+     * The time spent on them is included in {@link #getCompressNanos()}.
+     */
+    public long getSkippedFrames() {
+        return mSkippedFrames.sum();
+    }
+
+    /**
+     * Size of the compressed payloads divided by their original size. Lower is better, 1 means nothing was saved.
+     */
+    public double getCompressionRatio() {
+        long before = mBytesBeforeCompression.sum();
+        return before == 0 ? 1 : (double) mBytesAfterCompression.sum() / before;
+    }
+
+    /**
+     * Number of bytes which were saved by compression on sent payloads.
+     */
+    public long getBytesSaved() {
+        return mBytesBeforeCompression.sum() - mBytesAfterCompression.sum();
+    }
+
+    /**
+     * Total time spent compressing payloads, in nanoseconds.
+     */
+    public long getCompressNanos() {
+        return mCompressNanos.sum();
+    }
+
+    /**
+     * Number of compressed payloads which were received and decompressed.
+     */
+    public long getDecompressedFrames() {
+        return mDecompressedFrames.sum();
+    }
+
+    /**
+     * Size of the received compressed payloads divided by their decompressed size.
+     */
+    public double getDecompressionRatio() {
+        long after = mBytesAfterDecompression.sum();
+        return after == 0 ? 1 : (double) mBytesBeforeDecompression.sum() / after;
+    }
+
+    /**
+     * Total time spent decompressing payloads, in nanoseconds.
+     */
+    public long getDecompressNanos() {
+        return mDecompressNanos.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressed=" + getCompressedFrames() + ", skipped=" + getSkippedFrames() + ", ratio=" + getCompressionRatio()
+                + ", compressMs=" + getCompressNanos() / 1000000 + ", decompressed=" + getDecompressedFrames() + ", decompressMs="
+                + getDecompressNanos() / 1000000 + "}";
+    }
+}
@@ -0,0 +1,549 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connection is the transport behind a {@link Client} or a {@link JRocketClient}. Implementations decide how the bytes
+ * are moved, either with blocking threads ({@link Communicator}) or with a selector ({@link NioConnection}).
+ */
+
+abstract class Connection implements FrameDecoder.FrameListener {
+    /**
+     * Number of heartbeat periods without receiving anything after which the connection is considered dead.
+     */
+    private static final int MAX_MISSED_HEARTBEATS = 3;
+
+    private static final AtomicReferenceFieldUpdater<Connection, DisconnectReason> DISCONNECT_REASON =
+            AtomicReferenceFieldUpdater.newUpdater(Connection.class, DisconnectReason.class, "mDisconnectReason");
+
+    private JRocket mJRocket;
+    volatile Client.ClientListener mClientListener;
+    OutboundQueue mQueue;
+    private volatile ReplayBuffer mReplayBuffer;
+    private boolean mClosed;
+    private final ConcurrentHashMap<String, Integer> mPeerEventIds = new ConcurrentHashMap<>();
+    private final PendingRequests mRequests = new PendingRequests();
+    private volatile long mLastRead;
+    private long mLastPing;
+    private volatile long mRoundTripTime = -1;
+    private volatile long mRoundTripJitter = -1;
+    private volatile LatencyHistogram mRoundTripTimes;
+    private volatile HashedWheelTimer.Timeout mIdleTimeout;
+    private volatile boolean mIdleTimerStopped;
+    private volatile DisconnectReason mDisconnectReason;
+    private final LongAdder mMessagesReceived = new LongAdder();
+    private final LongAdder mBytesReceived = new LongAdder();
+    private final LongAdder mMessagesSent = new LongAdder();
+    private final LongAdder mBytesSent = new LongAdder();
+
+    private final Runnable mCheckIdle = new Runnable() {
+        @Override
+        public void run() {
+            checkIdle();
+        }
+    };
+
+    Connection(JRocket JRocket) {
+        mJRocket = JRocket;
+        mQueue = new OutboundQueue(JRocket.getMaxQueueSize(), JRocket.getMaxQueueBytes(), JRocket.getOverflowPolicy());
+    }
+
+    void setClientListener(Client.ClientListener clientListener) {
+        this.mClientListener = clientListener;
+    }
+
+    /**
+     * Moves the connection to another listener, unless it was closed and its listener was told already.
+     *
+     * @return False if the connection is closed.
+     */
+    synchronized boolean replaceClientListener(Client.ClientListener clientListener) {
+        if (mClosed) {
+            return false;
+        }
+        this.mClientListener = clientListener;
+        return true;
+    }
+
+    JRocket getJRocket() {
+        return mJRocket;
+    }
+
+    /**
+     * Sets the executor which completes the futures of requests, so their callbacks don't run on an I/O thread.
+     */
+    void setResponseExecutor(Executor executor) {
+        mRequests.setExecutor(executor);
+    }
+
+    /**
+     * Starts reading from and writing to the underlying socket.
+     */
+    abstract void start();
+
+    /**
+     * Queues an event for the remote side. The data is encoded with the payload codec. Never blocks on the socket.
+     */
+    void send(String event, Object data) {
+        try {
+            send(FrameCodec.encode(event, data, getJRocket()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends a request and returns the future of its response.
+     *
+     * @param timeoutMillis Time after which the future fails with a {@link java.util.concurrent.TimeoutException}. Zero means no timeout.
+     */
+    <T> CompletableFuture<T> request(String event, Object data, Class<T> type, long timeoutMillis) {
+        return request(event, data, type, timeoutMillis, false);
+    }
+
+    /**
+     * Sends a request and returns the future of its response.
+     *
+     * @param inline If true, the future is completed on the thread which read the response instead of the response executor. Only use it for
+     *               callbacks which are very cheap and never block.
+     */
+    <T> CompletableFuture<T> request(String event, Object data, Class<T> type, long timeoutMillis, boolean inline) {
+        PendingRequests.Request<T> request = mRequests.add(type, timeoutMillis, inline);
+        Integer eventId = mPeerEventIds.get(event);
+        try {
+            Frame frame = FrameCodec.encodeRequest(request.getId(), event, eventId != null ? eventId : -1, data, getJRocket());
+            frame.mEventCounters = getJRocket().getMetrics().event(event);
+            send(frame);
+        } catch (IOException e) {
+            mRequests.fail(request.getId(), e);
+        }
+        return request.getFuture();
+    }
+
+    /**
+     * Records the events which are written from now on in the buffer, so they can be replayed if the session is resumed on another connection.
+     */
+    void setReplayBuffer(ReplayBuffer replayBuffer) {
+        mReplayBuffer = replayBuffer;
+    }
+
+    /**
+     * Discards the queued frames. Called when the connection is closed. With a replay buffer the frames are kept for {@link #getUnsent()}.
+     */
+    void closeQueue() {
+        mQueue.close(mReplayBuffer != null);
+    }
+
+    /**
+     * Returns the frames which were still queued when the connection was closed, or sent afterwards.
+     *
+     * @return The frames, or null if too many of them were sent after the connection was closed.
+     */
+    List<Frame> getUnsent() {
+        return mQueue.unsent();
+    }
+
+    /**
+     * Fails the requests which are waiting for a response. Called when the connection is closed.
+     */
+    void failPendingRequests() {
+        mRequests.close();
+    }
+
+    /**
+     * Queues an encoded frame for the remote side. The frame may be shared with other connections. If the queue is full,
+     * the overflow policy decides whether the frame is dropped, the caller waits or the connection is closed. If the remote
+     * side announced an id for the event, the frame is sent with the id instead of the event name.
+     */
+    void send(Frame frame) {
+        send(frame, mayBlock());
+    }
+
+    /**
+     * Queues an encoded frame, see {@link #send(Frame)}.
+     *
+     * @param mayBlock Whether the calling thread may wait for room in a full queue.
+     */
+    void send(Frame frame, boolean mayBlock) {
+        if (!queue(frame, mayBlock)) {
+            close(DisconnectReason.QUEUE_OVERFLOW);
+        }
+    }
+
+    /**
+     * Queues an encoded frame like {@link #send(Frame, boolean)}, but leaves closing the connection to the caller.
+     *
+     * @return False if the queue is full and the connection has to be closed for {@link DisconnectReason#QUEUE_OVERFLOW}.
+     */
+    boolean queue(Frame frame, boolean mayBlock) {
+        try {
+            if (!mQueue.offer(withPeerEventId(frame), mayBlock)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        }
+        onFrameQueued();
+        return true;
+    }
+
+    /**
+     * Queues a frame which is replayed to a resumed session, see {@link OutboundQueue#offerReplayed(Frame)}. Closes the
+     * connection like {@link #send(Frame, boolean)} if the overflow policy doesn't allow it.
+     */
+    void replay(Frame frame) {
+        try {
+            if (!mQueue.offerReplayed(withPeerEventId(frame))) {
+                close(DisconnectReason.QUEUE_OVERFLOW);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        onFrameQueued();
+    }
+
+    private Frame withPeerEventId(Frame frame) {
+        if (frame.getEvent() != null) {
+            Integer eventId = mPeerEventIds.get(frame.getEvent());
+            if (eventId != null) {
+                return frame.withEventId(eventId);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Waits until the frame fits in the queue, if the calling thread may wait for it.
+     */
+    void awaitRoom(Frame frame) {
+        if (!mayBlock()) {
+            return;
+        }
+        try {
+            mQueue.awaitRoom(frame);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether the calling thread has to wait for room with {@link #awaitRoom(Frame)} before queueing the frame without waiting.
+     */
+    boolean mustWait(Frame frame) {
+        return mayBlock() && mQueue.mustWait(frame);
+    }
+
+    /**
+     * Called after a frame was added to the queue.
+     */
+    abstract void onFrameQueued();
+
+    /**
+     * Whether the calling thread may wait for room in a full queue.
+     */
+    boolean mayBlock() {
+        return true;
+    }
+
+    /**
+     * Closes the underlying socket. {@link Client.ClientListener#onClientDisconnect(JRocket)} is called once the connection is closed.
+     */
+    abstract void close();
+
+    /**
+     * Closes the connection like {@link #close(DisconnectReason)}, but leaves the work to a thread of the connection. Used on the shared timer
+     * thread, which must not run socket closes and listeners for every connection which timed out. By default it closes right away, which
+     * suits connections whose {@link #close()} already hands the work over, like {@link NioConnection}.
+     */
+    void closeLater(DisconnectReason reason) {
+        close(reason);
+    }
+
+    /**
+     * Closes the connection for the reason, unless it's already closing for another one.
+     */
+    void close(DisconnectReason reason) {
+        setDisconnectReason(reason);
+        close();
+    }
+
+    /**
+     * Remembers why the connection is closing. Only the first reason counts, errors while closing don't replace it.
+     */
+    void setDisconnectReason(DisconnectReason reason) {
+        DISCONNECT_REASON.compareAndSet(this, null, reason);
+    }
+
+    /**
+     * Why the connection was closed, or null while it's open.
+     */
+    DisconnectReason getDisconnectReason() {
+        return mDisconnectReason;
+    }
+
+    /**
+     * Must be called once the socket is closed. Counts the disconnect and tells the listener.
+     */
+    void onClosed() {
+        setDisconnectReason(DisconnectReason.CLOSED);
+        getJRocket().getMetrics().onDisconnect(mDisconnectReason);
+        Client.ClientListener clientListener;
+        synchronized (this) {
+            mClosed = true;
+            clientListener = mClientListener;
+        }
+        clientListener.onClientDisconnect(getJRocket());
+    }
+
+    /**
+     * Broadcasts to other clients
+     * <br>
+     * PS. broadcasts to <b>all of the clients except the client who's broadcasting</b>.
+     */
+
+    CompletableFuture<Integer> broadCast(String event, Object data, Client client) {
+        return ((JRocketServer) getJRocket()).broadCast(event, data, client);
+    }
+
+    /**
+     * Starts watching the connection with the shared timer. A ping is sent every heartbeat period, and the connection is closed when
+     * nothing was received for {@link #MAX_MISSED_HEARTBEATS} heartbeat periods.
+     */
+    void startIdleTimer() {
+        mLastRead = mLastPing = System.nanoTime();
+        int heartBeatRate = getJRocket().getHeartBeatRate();
+        if (heartBeatRate > 0) {
+            mIdleTimeout = HashedWheelTimer.shared().newTimeout(mCheckIdle, heartBeatRate, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    void stopIdleTimer() {
+        mIdleTimerStopped = true;
+        HashedWheelTimer.Timeout idleTimeout = mIdleTimeout;
+        if (idleTimeout != null) {
+            idleTimeout.cancel();
+        }
+    }
+
+    /**
+     * Must be called whenever bytes were read from the socket.
+     */
+    void onBytesRead() {
+        mLastRead = System.nanoTime();
+    }
+
+    /**
+     * Feeds bytes which were read from the socket to the decoder. If they aren't valid frames, or handling them throws, the
+     * connection is closing because of a {@link DisconnectReason#PROTOCOL_ERROR}.
+     */
+    void decode(FrameDecoder frameDecoder, ByteBuffer buffer) throws IOException {
+        try {
+            frameDecoder.decode(buffer);
+        } catch (IOException e) {
+            setDisconnectReason(DisconnectReason.PROTOCOL_ERROR);
+            throw e;
+        } catch (RuntimeException e) {
+            setDisconnectReason(DisconnectReason.PROTOCOL_ERROR);
+            throw e;
+        }
+    }
+
+    /**
+     * Must be called for every frame which is taken from the queue to be written to the socket.
+     */
+    void onFrameWritten(Frame frame) {
+        boolean message = frame.isMessage();
+        mBytesSent.add(frame.length());
+        if (message) {
+            mMessagesSent.increment();
+        }
+        getJRocket().getMetrics().onFrameSent(frame, message);
+        ReplayBuffer replayBuffer = mReplayBuffer;
+        if (replayBuffer != null && frame.isEvent()) {
+            replayBuffer.add(this, frame);
+        }
+    }
+
+    long getMessagesReceived() {
+        return mMessagesReceived.sum();
+    }
+
+    long getBytesReceived() {
+        return mBytesReceived.sum();
+    }
+
+    long getMessagesSent() {
+        return mMessagesSent.sum();
+    }
+
+    long getBytesSent() {
+        return mBytesSent.sum();
+    }
+
+    /**
+     * Smoothed round trip time of pings in nanoseconds, or -1 until the first pong arrived.
+     */
+    long getRoundTripTime() {
+        return mRoundTripTime;
+    }
+
+    /**
+     * Mean deviation of the round trip time of pings in nanoseconds, or -1 until the first pong arrived.
+     */
+    long getRoundTripJitter() {
+        return mRoundTripJitter;
+    }
+
+    /**
+     * Reads only update a timestamp. The timer task checks it when it fires, sends a ping if a heartbeat period passed since the last one and
+     * schedules itself again for the next ping or the moment the connection times out, whichever comes first. So each connection costs one
+     * timer task per heartbeat period.
+     */
+    private void checkIdle() {
+        long heartBeatRate = TimeUnit.MILLISECONDS.toNanos(getJRocket().getHeartBeatRate());
+        if (mIdleTimerStopped || heartBeatRate <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long readIdle = now - mLastRead;
+        if (readIdle >= MAX_MISSED_HEARTBEATS * heartBeatRate) {
+            closeLater(DisconnectReason.HEARTBEAT_TIMEOUT);
+            return;
+        }
+
+        long pingIdle = now - mLastPing;
+        if (pingIdle >= heartBeatRate) {
+            sendControl(FrameCodec.encodePing(now));
+            mLastPing = now;
+            pingIdle = 0;
+        }
+
+        long delay = Math.min(heartBeatRate - pingIdle, MAX_MISSED_HEARTBEATS * heartBeatRate - readIdle);
+        mIdleTimeout = HashedWheelTimer.shared().newTimeout(mCheckIdle, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Dispatches a frame which was received from the remote side. Heartbeats are dropped and announced event ids are
+     * remembered for sending.
+     */
+    @Override
+    public void onFrame(byte flags, ByteBuffer body) throws IOException {
+        boolean message = (flags & (FrameCodec.FLAG_HEARTBEAT | FrameCodec.FLAG_EVENT_TABLE)) == 0;
+        int bytes = FrameCodec.LENGTH_FIELD_SIZE + FrameCodec.FLAGS_SIZE + body.remaining();
+        mBytesReceived.add(bytes);
+        if (message) {
+            mMessagesReceived.increment();
+        }
+        getJRocket().getMetrics().onFrameReceived(bytes, message);
+        if ((flags & FrameCodec.FLAG_HEARTBEAT) != 0) {
+            if (body.remaining() >= FrameCodec.PING_SIZE) {
+                if ((flags & FrameCodec.FLAG_PONG) != 0) {
+                    onPong(body.getLong(body.position()));
+                } else {
+                    sendControl(FrameCodec.encodePong(body));
+                }
+            }
+            return;
+        }
+        if ((flags & FrameCodec.FLAG_EVENT_TABLE) != 0) {
+            FrameCodec.readEventTable(body, mPeerEventIds);
+            return;
+        }
+        boolean compressed = (flags & FrameCodec.FLAG_COMPRESSED) != 0;
+        if ((flags & FrameCodec.FLAG_RESPONSE) != 0) {
+            onResponse(Varint.read(body), body, compressed);
+            return;
+        }
+        Reply reply = null;
+        if ((flags & FrameCodec.FLAG_REQUEST) != 0) {
+            reply = new Reply(this, Varint.read(body));
+        }
+        if ((flags & FrameCodec.FLAG_EVENT_ID) != 0) {
+            mClientListener.onEventReceive(getJRocket(), Varint.readInt(body), body, compressed, reply);
+            return;
+        }
+        String event = FrameCodec.readEvent(body);
+
+        mClientListener.onEventReceive(getJRocket(), event, body, compressed, reply);
+    }
+
+    /**
+     * Queues a ping or a pong. They are skipped while the queue is full, so they never wait or push out events. A ping
+     * waits behind the queued events, so the round trip time includes the time the remote side takes to catch up.
+     */
+    private void sendControl(Frame frame) {
+        if (mQueue.offerIfRoom(frame)) {
+            onFrameQueued();
+        }
+    }
+
+    /**
+     * Records every round trip time sample in the histogram as well, e.g. the one of the {@link Client} of the connection.
+     */
+    void setRoundTripTimes(LatencyHistogram roundTripTimes) {
+        mRoundTripTimes = roundTripTimes;
+    }
+
+    /**
+     * @param sentAt The time the ping was sent at, which the pong echoes.
+     */
+    private void onPong(long sentAt) {
+        long sample = System.nanoTime() - sentAt;
+        if (sample >= 0) {
+            onRoundTrip(sample);
+        }
+    }
+
+    /**
+     * Updates the smoothed round trip time and its mean deviation like TCP does (RFC 6298).
+     *
+     * @param sample The round trip time of a ping in nanoseconds.
+     */
+    void onRoundTrip(long sample) {
+        long roundTripTime = mRoundTripTime;
+        if (roundTripTime < 0) {
+            mRoundTripJitter = sample / 2;
+            mRoundTripTime = sample;
+        } else {
+            mRoundTripJitter = mRoundTripJitter - (mRoundTripJitter >> 2) + (Math.abs(roundTripTime - sample) >> 2);
+            mRoundTripTime = roundTripTime - (roundTripTime >> 3) + (sample >> 3);
+        }
+        LatencyHistogram roundTripTimes = mRoundTripTimes;
+        if (roundTripTimes != null) {
+            roundTripTimes.record(sample);
+        }
+        getJRocket().getMetrics().onRoundTrip(sample);
+    }
+
+    private void onResponse(long correlationId, ByteBuffer payload, boolean compressed) throws IOException {
+        PendingRequests.Request<?> request = mRequests.remove(correlationId);
+        if (request == null) {
+            return;
+        }
+        JRocket JRocket = getJRocket();
+        long start = System.nanoTime();
+        if (compressed) {
+            payload = Compression.inflate(payload, JRocket.getCompressionDictionary(), JRocket.getCompressionStats());
+        }
+        try {
+            Object data = request.getType() == Payload.class ? Payload.copyOf(payload, JRocket.getPayloadCodec())
+                    : JRocket.getPayloadCodec().decode(payload, request.getType());
+            JRocket.getMetrics().onDecoded(System.nanoTime() - start);
+            request.complete(data);
+        } catch (IOException e) {
+            request.fail(e);
+        }
+    }
+}
@@ -1,6 +0,0 @@
-package xyz.farhanfarooqui.JRocket;
-
-class Constants {
-    static final String EVENT = "event";
-    static final String DATA = "data";
-}
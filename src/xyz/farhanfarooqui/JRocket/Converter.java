@@ -4,13 +4,11 @@ import com.google.gson.Gson;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.net.Socket;
-
 public class Converter {
+    private static final Gson GSON = new Gson();
 
     public static JSONObject convertObjectToJSON(Object object) {
-        Gson gson = new Gson();
-        String json = gson.toJson(object);
+        String json = GSON.toJson(object);
         try {
             return new JSONObject(json);
         } catch (JSONException e) {
@@ -20,12 +18,11 @@ public class Converter {
     }
 
     public static <T> T convertJSONToObject(JSONObject jsonObject, Class<T> type) {
-        Gson gson = new Gson();
         String json = jsonObject.toString();
         if (json.isEmpty()) {
             return null;
         } else {
-            return gson.fromJson(json, type);
+            return GSON.fromJson(json, type);
         }
     }
 }
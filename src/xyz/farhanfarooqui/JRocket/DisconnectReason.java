@@ -0,0 +1,41 @@
+package xyz.farhanfarooqui.JRocket;
+
+/**
+ * Why a connection was closed. See {@link Client#getDisconnectReason()} and {@link Metrics#getDisconnects()}.
+ */
+public enum DisconnectReason {
+    /**
+     * Closed by this side, e.g. with {@link JRocketServer#disconnect(Client)}, {@link JRocketClient#disconnect()} or {@link JRocketServer#stop()}.
+     */
+    CLOSED,
+
+    /**
+     * The remote side closed the connection.
+     */
+    PEER_CLOSED,
+
+    /**
+     * Nothing was received for three heartbeat periods.
+     */
+    HEARTBEAT_TIMEOUT,
+
+    /**
+     * The outbound queue was full and the overflow policy is {@link OverflowPolicy#DISCONNECT}.
+     */
+    QUEUE_OVERFLOW,
+
+    /**
+     * The remote side sent bytes which aren't valid frames, or handling a frame failed, e.g. because an inline listener threw.
+     */
+    PROTOCOL_ERROR,
+
+    /**
+     * Reading from or writing to the socket failed.
+     */
+    IO_ERROR,
+
+    /**
+     * The client resumed its session on a new connection while this one still seemed to be open. See {@link JRocketServer#setSessionTimeout(int)}.
+     */
+    SUPERSEDED
+}
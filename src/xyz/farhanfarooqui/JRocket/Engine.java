@@ -0,0 +1,23 @@
+package xyz.farhanfarooqui.JRocket;
+
+/**
+ * Selects how a {@link JRocketServer} or a {@link JRocketClient} performs its socket I/O.
+ */
+public enum Engine {
+    /**
+     * Every client gets a blocking sender and a blocking receiver running on a fixed thread pool. One client requires two threads.
+     */
+    THREAD_POOL,
+
+    /**
+     * Like {@link #THREAD_POOL}, but the sender and the receiver of every client run on their own virtual thread. There is no pool to size and connections are
+     * never rejected because the pool is full. Virtual threads require Java 21, on older runtimes a cached thread pool is used instead.
+     */
+    VIRTUAL_THREADS,
+
+    /**
+     * Clients are multiplexed over a small number of {@link java.nio.channels.Selector} event loops, usually one per core.
+     * Idle clients do not hold any thread.
+     */
+    NIO
+}
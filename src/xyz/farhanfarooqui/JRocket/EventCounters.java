@@ -0,0 +1,28 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live counters of one event, see {@link EventMetrics}.
+ */
+
+final class EventCounters {
+    private final LongAdder mReceived = new LongAdder();
+    private final LongAdder mReceivedBytes = new LongAdder();
+    private final LongAdder mSent = new LongAdder();
+    private final LongAdder mSentBytes = new LongAdder();
+
+    void onReceived(int bytes) {
+        mReceived.increment();
+        mReceivedBytes.add(bytes);
+    }
+
+    void onSent(int bytes) {
+        mSent.increment();
+        mSentBytes.add(bytes);
+    }
+
+    EventMetrics toEventMetrics() {
+        return new EventMetrics(mReceived.sum(), mReceivedBytes.sum(), mSent.sum(), mSentBytes.sum());
+    }
+}
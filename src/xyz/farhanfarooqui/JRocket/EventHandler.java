@@ -0,0 +1,62 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * EventHandler is what's registered for an event with onReceive. It remembers the type the payload has to be decoded into
+ * before the listener is called, and whether the listener runs inline on the I/O thread. It's created where the listener is
+ * registered, which knows how to call it.
+ */
+
+abstract class EventHandler {
+    private final Class<?> mType;
+    private final boolean mInline;
+    private EventCounters mCounters;
+
+    EventHandler(Class<?> type, boolean inline) {
+        mType = type;
+        mInline = inline;
+    }
+
+    /**
+     * The type the payload is decoded into.
+     */
+    Class<?> getType() {
+        return mType;
+    }
+
+    boolean isInline() {
+        return mInline;
+    }
+
+    /**
+     * Sets the counters of the event in the {@link Metrics}. Must be set before the handler is registered.
+     */
+    void setCounters(EventCounters counters) {
+        mCounters = counters;
+    }
+
+    EventCounters getCounters() {
+        return mCounters;
+    }
+
+    /**
+     * Decodes the payload for the listener. Listeners for {@link Payload} get a copy of the bytes which is decoded later,
+     * if at all.
+     */
+    Object decode(ByteBuffer payload, PayloadCodec payloadCodec) throws IOException {
+        if (mType == Payload.class) {
+            return Payload.copyOf(payload, payloadCodec);
+        }
+        return payloadCodec.decode(payload, mType);
+    }
+
+    /**
+     * Calls the listener with the decoded payload.
+     *
+     * @param client The client which sent the event, or null on a {@link JRocketClient}.
+     * @param reply  The reply if the event is a request, otherwise {@link Reply#NONE}.
+     */
+    abstract void onReceive(Object data, Client client, Reply reply);
+}
@@ -0,0 +1,220 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventLoop owns one {@link Selector} and performs all the reads and writes of the {@link NioConnection}s registered
+ * with it. Every connection belongs to exactly one loop, so a connection's state is only touched by that loop's thread.
+ * Other threads talk to the loop by submitting tasks through {@link #execute(Runnable)}.
+ */
+
+class EventLoop extends Thread {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private Selector mSelector;
+    private ConcurrentLinkedQueue<Runnable> mTasks;
+    private PriorityQueue<ScheduledTask> mScheduledTasks;
+    private HashSet<NioConnection> mConnections;
+    private ByteBuffer mReadBuffer;
+    private volatile boolean running = true;
+    private volatile Runnable mOnTerminated;
+
+    EventLoop(String name) throws IOException {
+        super(name);
+        mSelector = Selector.open();
+        mTasks = new ConcurrentLinkedQueue<>();
+        mScheduledTasks = new PriorityQueue<>();
+        mConnections = new HashSet<>();
+        mReadBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Runs the task on this loop's thread.
+     */
+    void execute(Runnable task) {
+        mTasks.add(task);
+        if (Thread.currentThread() != this) {
+            mSelector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the task on this loop's thread after the delay.
+     */
+    void schedule(final Runnable task, long delayMillis) {
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        execute(new Runnable() {
+            @Override
+            public void run() {
+                mScheduledTasks.add(new ScheduledTask(deadline, task));
+            }
+        });
+    }
+
+    boolean inEventLoop() {
+        return Thread.currentThread() == this;
+    }
+
+    /**
+     * Registers the channel with this loop. Must be called on the loop's thread.
+     */
+    SelectionKey register(SocketChannel channel, NioConnection connection) throws IOException {
+        return register(channel, connection, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Registers the channel with this loop for the operations. Must be called on the loop's thread.
+     */
+    SelectionKey register(SocketChannel channel, NioConnection connection, int ops) throws IOException {
+        SelectionKey key = channel.register(mSelector, ops, connection);
+        mConnections.add(connection);
+        return key;
+    }
+
+    /**
+     * Forgets about the connection. Must be called on the loop's thread.
+     */
+    void deregister(NioConnection connection) {
+        mConnections.remove(connection);
+    }
+
+    /**
+     * The buffer which is shared by every connection of this loop for reading. It is only valid during a read callback.
+     */
+    ByteBuffer getReadBuffer() {
+        return mReadBuffer;
+    }
+
+    /**
+     * Closes every connection of this loop and stops the loop.
+     */
+    void shutdown() {
+        shutdown(null);
+    }
+
+    /**
+     * Closes every connection of this loop and stops the loop.
+     *
+     * @param onTerminated Runs on the loop's thread once its connections are closed, may be null.
+     */
+    void shutdown(Runnable onTerminated) {
+        mOnTerminated = onTerminated;
+        running = false;
+        mSelector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                ScheduledTask next = mScheduledTasks.peek();
+                if (!mTasks.isEmpty()) {
+                    // Tasks which were submitted from this thread didn't wake up the selector
+                    mSelector.selectNow();
+                } else if (next == null) {
+                    mSelector.select();
+                } else {
+                    long timeout = TimeUnit.NANOSECONDS.toMillis(next.deadline - System.nanoTime());
+                    if (timeout > 0) {
+                        mSelector.select(timeout);
+                    } else {
+                        mSelector.selectNow();
+                    }
+                }
+
+                runTasks();
+                runScheduledTasks();
+
+                Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    NioConnection connection = (NioConnection) key.attachment();
+                    try {
+                        if (key.isConnectable()) {
+                            connection.onConnectable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (CancelledKeyException e) {
+                        connection.close();
+                    } catch (RuntimeException e) {
+                        // Only the connection which failed is closed, the loop keeps serving the others
+                        e.printStackTrace();
+                        connection.closeNow(DisconnectReason.PROTOCOL_ERROR);
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        runTasks();
+        for (NioConnection connection : new ArrayList<>(mConnections)) {
+            connection.closeNow();
+        }
+        try {
+            mSelector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Runnable onTerminated = mOnTerminated;
+        if (onTerminated != null) {
+            onTerminated.run();
+        }
+    }
+
+    private void runScheduledTasks() {
+        long now = System.nanoTime();
+        ScheduledTask scheduledTask;
+        while ((scheduledTask = mScheduledTasks.peek()) != null && scheduledTask.deadline - now <= 0) {
+            mScheduledTasks.poll();
+            try {
+                scheduledTask.task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = mTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+        private final long deadline;
+        private final Runnable task;
+
+        ScheduledTask(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask o) {
+            return Long.compare(deadline - o.deadline, 0);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of event loops. New connections are spread over the loops in round-robin order. A group can be shared by
+ * any number of {@link JRocketClient}s running on {@link Engine#NIO}, see {@link JRocketClient#setEventLoopGroup(EventLoopGroup)}.
+ */
+
+public class EventLoopGroup {
+    private EventLoop[] mEventLoops;
+    private AtomicInteger mNext;
+
+    /**
+     * @param nThreads Number of event loops. Zero or less means one loop per available processor.
+     */
+    public EventLoopGroup(int nThreads) throws IOException {
+        this(nThreads, "JRocket-nio-", false);
+    }
+
+    /**
+     * @param name   Prefix of the names of the threads.
+     * @param daemon Whether the threads are daemon threads, which don't keep the JVM alive.
+     */
+    EventLoopGroup(int nThreads, String name, boolean daemon) throws IOException {
+        if (nThreads <= 0) {
+            nThreads = Runtime.getRuntime().availableProcessors();
+        }
+        mEventLoops = new EventLoop[nThreads];
+        mNext = new AtomicInteger();
+        for (int i = 0; i < nThreads; i++) {
+            mEventLoops[i] = new EventLoop(name + i);
+            mEventLoops[i].setDaemon(daemon);
+        }
+        for (EventLoop eventLoop : mEventLoops) {
+            eventLoop.start();
+        }
+    }
+
+    /**
+     * Returns the loop which should own the next connection.
+     */
+    EventLoop next() {
+        return mEventLoops[Math.floorMod(mNext.getAndIncrement(), mEventLoops.length)];
+    }
+
+    /**
+     * Returns the number of event loops.
+     */
+    public int size() {
+        return mEventLoops.length;
+    }
+
+    /**
+     * Stops the event loops and closes every connection which runs on them.
+     */
+    public void shutdown() {
+        shutdown(null);
+    }
+
+    /**
+     * Stops the event loops like {@link #shutdown()}.
+     *
+     * @param onTerminated Runs once every loop closed its connections, may be null.
+     */
+    void shutdown(final Runnable onTerminated) {
+        final AtomicInteger running = new AtomicInteger(mEventLoops.length);
+        Runnable onLoopTerminated = new Runnable() {
+            @Override
+            public void run() {
+                if (running.decrementAndGet() == 0 && onTerminated != null) {
+                    onTerminated.run();
+                }
+            }
+        };
+        for (EventLoop eventLoop : mEventLoops) {
+            eventLoop.shutdown(onLoopTerminated);
+        }
+    }
+}
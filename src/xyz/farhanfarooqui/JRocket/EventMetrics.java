@@ -0,0 +1,44 @@
+package xyz.farhanfarooqui.JRocket;
+
+/**
+ * How many times an event was received and sent, and the size of its payloads, at the moment it was taken. Payload sizes
+ * are counted as they were on the wire, so compressed payloads count with their compressed size.
+ */
+
+public final class EventMetrics {
+    private final long mReceived;
+    private final long mReceivedBytes;
+    private final long mSent;
+    private final long mSentBytes;
+
+    EventMetrics(long received, long receivedBytes, long sent, long sentBytes) {
+        mReceived = received;
+        mReceivedBytes = receivedBytes;
+        mSent = sent;
+        mSentBytes = sentBytes;
+    }
+
+    public long getReceived() {
+        return mReceived;
+    }
+
+    public long getReceivedBytes() {
+        return mReceivedBytes;
+    }
+
+    /**
+     * Number of times the event was written to a connection. A broadcast to a thousand clients counts a thousand times.
+     */
+    public long getSent() {
+        return mSent;
+    }
+
+    public long getSentBytes() {
+        return mSentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "EventMetrics{received=" + mReceived + ", receivedBytes=" + mReceivedBytes + ", sent=" + mSent + ", sentBytes=" + mSentBytes + "}";
+    }
+}
@@ -0,0 +1,68 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * EventTable holds the handlers of the events a side listens to. Every event gets the next free id when it's registered
+ * for the first time and keeps it, so events which arrive with an id are dispatched with an array lookup. Events which
+ * arrive with their name are looked up by name.
+ */
+
+final class EventTable {
+    private final ConcurrentHashMap<String, Integer> mIds = new ConcurrentHashMap<>();
+    private volatile String[] mEvents = new String[0];
+    private volatile EventHandler[] mHandlers = new EventHandler[0];
+
+    /**
+     * Sets the handler of the event.
+     *
+     * @return The id of the event if it's new, otherwise -1.
+     */
+    synchronized int put(String event, EventHandler handler) {
+        Integer id = mIds.get(event);
+        if (id != null) {
+            EventHandler[] handlers = mHandlers.clone();
+            handlers[id] = handler;
+            mHandlers = handlers;
+            return -1;
+        }
+        int newId = mEvents.length;
+        String[] events = Arrays.copyOf(mEvents, newId + 1);
+        events[newId] = event;
+        EventHandler[] handlers = Arrays.copyOf(mHandlers, newId + 1);
+        handlers[newId] = handler;
+        mEvents = events;
+        mHandlers = handlers;
+        mIds.put(event, newId);
+        return newId;
+    }
+
+    EventHandler get(String event) {
+        Integer id = mIds.get(event);
+        return id != null ? mHandlers[id] : null;
+    }
+
+    EventHandler get(int id) {
+        EventHandler[] handlers = mHandlers;
+        return id < handlers.length ? handlers[id] : null;
+    }
+
+    boolean isEmpty() {
+        return mEvents.length == 0;
+    }
+
+    /**
+     * Encodes the announcement of every event, which is sent right after connecting.
+     */
+    Frame toFrame() {
+        return FrameCodec.encodeEventTable(mEvents, 0);
+    }
+
+    /**
+     * Encodes the announcement of a single event which was registered while connected.
+     */
+    static Frame toFrame(String event, int id) {
+        return FrameCodec.encodeEventTable(new String[]{event}, id);
+    }
+}
@@ -0,0 +1,94 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fanout queues a frame on many clients off the calling thread. The clients are split into partitions by the hash of
+ * their id, see {@link ClientRegistry#partitions(int)}, and the partitions are filled in parallel. Every partition runs
+ * its work on its own {@link SerialExecutor}, and a client always belongs to the same partition, so every client gets
+ * the frames of successive fan-outs in the order they were started.
+ * <br>
+ * The partitions never wait for room in the queue of a client, so one slow client can't hold up the others. With
+ * {@link OverflowPolicy#BLOCK} a client whose queue is full is disconnected instead, see {@link Client#queue(Frame)}.
+ */
+
+final class Fanout {
+    private final SerialExecutor[] mPartitions;
+
+    /**
+     * @param executor   Runs the partitions, usually a pool with one thread per processor.
+     * @param partitions Number of partitions, which is the number of threads a single fan-out can use.
+     */
+    Fanout(Executor executor, int partitions) {
+        mPartitions = new SerialExecutor[partitions];
+        for (int i = 0; i < partitions; i++) {
+            mPartitions[i] = new SerialExecutor(executor);
+        }
+    }
+
+    int getPartitionCount() {
+        return mPartitions.length;
+    }
+
+    /**
+     * Queues the frame on every client of the registry except the given one and returns right away.
+     *
+     * @param except Client which is skipped, or null.
+     * @return Completes with the number of clients the frame was queued on, once it was queued on all of them. Partitions
+     * which were rejected by the executor, because it's shutting down, count as none.
+     */
+    CompletableFuture<Integer> send(ClientRegistry clients, final Frame frame, final Client except) {
+        final Client[][] partitions = clients.partitions(mPartitions.length);
+        int busy = 0;
+        for (Client[] partition : partitions) {
+            if (partition.length > 0) {
+                busy++;
+            }
+        }
+        if (busy == 0) {
+            return CompletableFuture.completedFuture(0);
+        }
+
+        final CompletableFuture<Integer> future = new CompletableFuture<>();
+        final AtomicInteger remaining = new AtomicInteger(busy);
+        final AtomicInteger sent = new AtomicInteger();
+        for (int i = 0; i < partitions.length; i++) {
+            final Client[] partition = partitions[i];
+            if (partition.length == 0) {
+                continue;
+            }
+            try {
+                mPartitions[i].execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int n = 0;
+                        try {
+                            for (Client client : partition) {
+                                if (client != except) {
+                                    client.queue(frame);
+                                    n++;
+                                }
+                            }
+                        } finally {
+                            done(future, remaining, sent, n);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The pool is shutting down, the clients of this partition don't get the frame
+                done(future, remaining, sent, 0);
+            }
+        }
+        return future;
+    }
+
+    private static void done(CompletableFuture<Integer> future, AtomicInteger remaining, AtomicInteger sent, int n) {
+        sent.addAndGet(n);
+        if (remaining.decrementAndGet() == 0) {
+            future.complete(sent.get());
+        }
+    }
+}
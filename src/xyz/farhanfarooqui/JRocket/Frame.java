@@ -0,0 +1,128 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A frame which is encoded and ready to be written to a socket. Frames are immutable, so a single frame is shared by the
+ * outbound queues of every client it is sent to and written as-is. See {@link FrameCodec} for the format.
+ */
+
+final class Frame {
+    /**
+     * Ids up to this one get their frame cached. Ids are handed out from zero in the order events are registered, so
+     * real ones stay far below.
+     */
+    private static final int MAX_CACHED_EVENT_ID = 63;
+    private static final Frame[] NO_FRAMES = new Frame[0];
+
+    private final String mEvent;
+    private final byte[] mBytes;
+    private final int mPayloadOffset;
+    private final int mEventId;
+    private volatile Frame[] mWithEventIds = NO_FRAMES;
+    /**
+     * The counters of the event in the {@link Metrics} of the sender, cached by the first writer which counts the frame.
+     */
+    volatile EventCounters mEventCounters;
+
+    Frame(String event, byte[] bytes) {
+        this(event, bytes, -1, -1);
+    }
+
+    /**
+     * @param payloadOffset Where the payload starts in the bytes, or -1 for control frames.
+     * @param eventId       The id which is sent instead of the event name, or -1 if the name is sent.
+     */
+    Frame(String event, byte[] bytes, int payloadOffset, int eventId) {
+        mEvent = event;
+        mBytes = bytes;
+        mPayloadOffset = payloadOffset;
+        mEventId = eventId;
+    }
+
+    /**
+     * Name of the event which is carried by the frame.
+     */
+    String getEvent() {
+        return mEvent;
+    }
+
+    /**
+     * Returns the frame with the event name replaced by the id the receiver assigned to it. The result is cached per id,
+     * so a frame which is broadcasted is encoded again once for every id the receivers gave the event, not once per receiver.
+     */
+    Frame withEventId(int eventId) {
+        if (mEvent == null || mPayloadOffset < 0 || mEventId >= 0) {
+            return this;
+        }
+        Frame[] frames = mWithEventIds;
+        if (eventId < frames.length && frames[eventId] != null) {
+            return frames[eventId];
+        }
+        Frame frame = FrameCodec.encode(mEvent, eventId, mBytes, mPayloadOffset);
+        if (eventId <= MAX_CACHED_EVENT_ID) {
+            cache(eventId, frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Copies the cache on write, so the writers which look up their id never lock.
+     */
+    private synchronized void cache(int eventId, Frame frame) {
+        Frame[] frames = mWithEventIds;
+        if (eventId < frames.length && frames[eventId] != null) {
+            return;
+        }
+        frames = Arrays.copyOf(frames, Math.max(frames.length, eventId + 1));
+        frames[eventId] = frame;
+        mWithEventIds = frames;
+    }
+
+    /**
+     * Number of bytes of the frame, including its header.
+     */
+    int length() {
+        return mBytes.length;
+    }
+
+    /**
+     * Number of bytes of the payload, as it's sent.
+     */
+    int payloadLength() {
+        return mPayloadOffset < 0 ? 0 : mBytes.length - mPayloadOffset;
+    }
+
+    /**
+     * Whether the frame carries an event, a request or a response, as opposed to a heartbeat or an announcement of event ids.
+     */
+    boolean isMessage() {
+        return (mBytes[FrameCodec.LENGTH_FIELD_SIZE] & (FrameCodec.FLAG_HEARTBEAT | FrameCodec.FLAG_EVENT_TABLE)) == 0;
+    }
+
+    /**
+     * Whether the frame carries an event, as opposed to a request, a response or a control frame. Only events are replayed to a resumed session.
+     */
+    boolean isEvent() {
+        return (mBytes[FrameCodec.LENGTH_FIELD_SIZE] & (FrameCodec.FLAG_HEARTBEAT | FrameCodec.FLAG_EVENT_TABLE
+                | FrameCodec.FLAG_REQUEST | FrameCodec.FLAG_RESPONSE)) == 0;
+    }
+
+    /**
+     * Returns a new read-only view of the frame. Every writer gets its own view, so their positions don't interfere.
+     */
+    ByteBuffer buffer() {
+        return ByteBuffer.wrap(mBytes).asReadOnlyBuffer();
+    }
+
+    void writeTo(OutputStream outputStream) throws IOException {
+        outputStream.write(mBytes);
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        buffer.put(mBytes);
+    }
+}
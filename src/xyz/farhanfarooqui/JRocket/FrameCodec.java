@@ -0,0 +1,219 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Converts events to and from the frames which are sent over the socket.
+ * <br>
+ * A frame starts with the length of the rest of the frame in bytes, as a 4-byte big-endian int. It's followed by one
+ * byte of flags and the body. The body is the length of the event name as a varint, the UTF-8 encoded event name, and
+ * the payload as encoded by the {@link PayloadCodec}.
+ * <br>
+ * If {@link #FLAG_COMPRESSED} is set, the payload is compressed with deflate, see {@link Compression}. The event name or id
+ * is never compressed, so events without a listener are dropped without decompressing them.
+ * <br>
+ * If {@link #FLAG_EVENT_ID} is set, the event name is replaced by the varint id which the receiver assigned to it.
+ * Every side announces the ids of the events it listens to in a control frame with {@link #FLAG_EVENT_TABLE} set, right
+ * after connecting and whenever it registers a new event. Its body is the varint id of the first event, the varint number
+ * of events, and the names of the events with consecutive ids, each one as varint length and UTF-8 bytes. Until the ids
+ * of the receiver are known, and for events it didn't announce, the name is sent.
+ * <br>
+ * If {@link #FLAG_REQUEST} or {@link #FLAG_RESPONSE} is set, the body starts with a varint correlation id. A request
+ * expects a response with the same correlation id. A response has no event name, only the payload follows.
+ * <br>
+ * A heartbeat is a control frame with {@link #FLAG_HEARTBEAT} set. A ping carries the monotonic time it was sent at as
+ * an 8-byte big-endian long, and is answered with a pong which has {@link #FLAG_PONG} set as well and the same body, so
+ * the sender measures the round trip on its own clock. Heartbeats with an empty body are not answered.
+ */
+
+class FrameCodec {
+    static final int LENGTH_FIELD_SIZE = 4;
+    static final int FLAGS_SIZE = 1;
+    static final int MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    static final byte FLAGS_NONE = 0;
+    static final byte FLAG_HEARTBEAT = 1;
+    static final byte FLAG_EVENT_ID = 2;
+    static final byte FLAG_EVENT_TABLE = 4;
+    static final byte FLAG_COMPRESSED = 8;
+    static final byte FLAG_REQUEST = 16;
+    static final byte FLAG_RESPONSE = 32;
+    static final byte FLAG_PONG = 64;
+
+    static final int PING_SIZE = 8;
+
+    /**
+     * Encodes an event into a frame, ready to be written to a socket. The same frame can be sent to any number of clients.
+     * A {@link Payload} is already encoded, so its bytes are copied as they are. Payloads which reach the compression
+     * threshold of the sender are compressed.
+     */
+    static Frame encode(String event, Object data, JRocket JRocket) throws IOException {
+        return encode(FLAGS_NONE, 0, event, -1, data, JRocket);
+    }
+
+    /**
+     * Encodes a request which expects a response with the same correlation id.
+     *
+     * @param eventId The id the receiver announced for the event, or -1 to send the name.
+     */
+    static Frame encodeRequest(long correlationId, String event, int eventId, Object data, JRocket JRocket) throws IOException {
+        return encode(FLAG_REQUEST, correlationId, event, eventId, data, JRocket);
+    }
+
+    /**
+     * Encodes the response to the request with the correlation id.
+     */
+    static Frame encodeResponse(long correlationId, Object data, JRocket JRocket) throws IOException {
+        return encode(FLAG_RESPONSE, correlationId, null, -1, data, JRocket);
+    }
+
+    private static Frame encode(byte flags, long correlationId, String event, int eventId, Object data, JRocket JRocket) throws IOException {
+        byte[] payload;
+        if (data instanceof Payload) {
+            payload = ((Payload) data).array();
+        } else {
+            long start = System.nanoTime();
+            payload = JRocket.getPayloadCodec().encode(data);
+            JRocket.getMetrics().onEncoded(System.nanoTime() - start);
+        }
+        byte[] compressed = Compression.deflate(payload, JRocket.getCompressionThreshold(), JRocket.getCompressionDictionary(),
+                JRocket.getCompressionStats());
+        if (compressed != null) {
+            payload = compressed;
+            flags |= FLAG_COMPRESSED;
+        }
+        boolean correlated = (flags & (FLAG_REQUEST | FLAG_RESPONSE)) != 0;
+        byte[] name = null;
+        int length = FLAGS_SIZE + payload.length;
+        if (correlated) {
+            length += Varint.size(correlationId);
+        }
+        if (eventId >= 0) {
+            flags |= FLAG_EVENT_ID;
+            length += Varint.size(eventId);
+        } else if (event != null) {
+            name = event.getBytes(StandardCharsets.UTF_8);
+            length += Varint.size(name.length) + name.length;
+        }
+        if (length > MAX_FRAME_LENGTH) {
+            throw new IOException("Frame too large " + length);
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_FIELD_SIZE + length);
+        frame.putInt(length);
+        frame.put(flags);
+        if (correlated) {
+            Varint.write(frame, correlationId);
+        }
+        if (eventId >= 0) {
+            Varint.write(frame, eventId);
+        } else if (name != null) {
+            Varint.write(frame, name.length);
+            frame.put(name);
+        }
+        int payloadOffset = frame.position();
+        frame.put(payload);
+        if (correlated) {
+            // Requests and responses belong to a single connection, they are never conflated or encoded again.
+            return new Frame(null, frame.array(), payloadOffset, -1);
+        }
+        return new Frame(event, frame.array(), payloadOffset, -1);
+    }
+
+    /**
+     * Encodes the frame of an event again with the event id instead of its name.
+     *
+     * @param bytes         The frame which carries the event name.
+     * @param payloadOffset Where the payload starts in the bytes.
+     */
+    static Frame encode(String event, int eventId, byte[] bytes, int payloadOffset) {
+        int payloadLength = bytes.length - payloadOffset;
+        int length = FLAGS_SIZE + Varint.size(eventId) + payloadLength;
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_FIELD_SIZE + length);
+        frame.putInt(length);
+        frame.put((byte) (FLAG_EVENT_ID | (bytes[LENGTH_FIELD_SIZE] & FLAG_COMPRESSED)));
+        Varint.write(frame, eventId);
+        int newPayloadOffset = frame.position();
+        frame.put(bytes, payloadOffset, payloadLength);
+        return new Frame(event, frame.array(), newPayloadOffset, eventId);
+    }
+
+    /**
+     * Encodes a ping which carries the time it was sent at.
+     *
+     * @param timestamp The value of {@link System#nanoTime()} when the ping is sent.
+     */
+    static Frame encodePing(long timestamp) {
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_FIELD_SIZE + FLAGS_SIZE + PING_SIZE);
+        frame.putInt(FLAGS_SIZE + PING_SIZE);
+        frame.put(FLAG_HEARTBEAT);
+        frame.putLong(timestamp);
+        return new Frame(null, frame.array());
+    }
+
+    /**
+     * Encodes the pong which answers a ping.
+     *
+     * @param ping The body of the ping.
+     */
+    static Frame encodePong(ByteBuffer ping) {
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_FIELD_SIZE + FLAGS_SIZE + PING_SIZE);
+        frame.putInt(FLAGS_SIZE + PING_SIZE);
+        frame.put((byte) (FLAG_HEARTBEAT | FLAG_PONG));
+        frame.putLong(ping.getLong(ping.position()));
+        return new Frame(null, frame.array());
+    }
+
+    /**
+     * Encodes the announcement of events the sender listens to.
+     *
+     * @param firstId The id of the first event, the others have consecutive ids.
+     */
+    static Frame encodeEventTable(String[] events, int firstId) {
+        byte[][] names = new byte[events.length][];
+        int length = FLAGS_SIZE + Varint.size(firstId) + Varint.size(events.length);
+        for (int i = 0; i < events.length; i++) {
+            names[i] = events[i].getBytes(StandardCharsets.UTF_8);
+            length += Varint.size(names[i].length) + names[i].length;
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(LENGTH_FIELD_SIZE + length);
+        frame.putInt(length);
+        frame.put(FLAG_EVENT_TABLE);
+        Varint.write(frame, firstId);
+        Varint.write(frame, events.length);
+        for (byte[] name : names) {
+            Varint.write(frame, name.length);
+            frame.put(name);
+        }
+        return new Frame(null, frame.array());
+    }
+
+    /**
+     * Reads an announcement of events into the map of event names to ids.
+     */
+    static void readEventTable(ByteBuffer body, Map<String, Integer> eventIds) throws IOException {
+        int id = Varint.readInt(body);
+        int count = Varint.readInt(body);
+        for (int i = 0; i < count; i++) {
+            eventIds.put(readEvent(body), id + i);
+        }
+    }
+
+    /**
+     * Reads the event name from the body of a frame. Afterwards the body is positioned at the payload.
+     */
+    static String readEvent(ByteBuffer body) throws IOException {
+        int length = Varint.readInt(body);
+        if (length > body.remaining()) {
+            throw new IOException("Truncated event name");
+        }
+        ByteBuffer name = body.duplicate();
+        name.limit(name.position() + length);
+        body.position(body.position() + length);
+        return StandardCharsets.UTF_8.decode(name).toString();
+    }
+}
@@ -0,0 +1,86 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * FrameDecoder turns the bytes read from a socket back into frames. Bytes can be fed in chunks of any size, a frame is
+ * handed to the {@link FrameListener} as soon as it is complete. See {@link FrameCodec} for the frame format.
+ * <br>
+ * A frame which arrives in one piece is handed over as a slice of the buffer which was passed to {@link #decode(ByteBuffer)},
+ * without copying. Only frames which are split across reads are collected into a buffer of their own.
+ */
+
+class FrameDecoder {
+    private FrameListener mFrameListener;
+    private ByteBuffer mLengthField;
+    private ByteBuffer mFrame;
+
+    FrameDecoder(FrameListener frameListener) {
+        mFrameListener = frameListener;
+        mLengthField = ByteBuffer.allocate(FrameCodec.LENGTH_FIELD_SIZE);
+    }
+
+    /**
+     * Consumes every byte of the buffer.
+     */
+    void decode(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mFrame == null) {
+                if (mLengthField.position() == 0 && buffer.remaining() >= FrameCodec.LENGTH_FIELD_SIZE) {
+                    int position = buffer.position();
+                    int length = checkLength(buffer.getInt(position));
+                    if (buffer.remaining() - FrameCodec.LENGTH_FIELD_SIZE >= length) {
+                        ByteBuffer frame = buffer.duplicate();
+                        frame.position(position + FrameCodec.LENGTH_FIELD_SIZE);
+                        frame.limit(position + FrameCodec.LENGTH_FIELD_SIZE + length);
+                        buffer.position(frame.limit());
+                        onFrame(frame.slice());
+                        continue;
+                    }
+                }
+
+                while (mLengthField.hasRemaining() && buffer.hasRemaining()) {
+                    mLengthField.put(buffer.get());
+                }
+                if (mLengthField.hasRemaining()) {
+                    return;
+                }
+                mFrame = ByteBuffer.allocate(checkLength(mLengthField.getInt(0)));
+                mLengthField.clear();
+            }
+
+            int n = Math.min(buffer.remaining(), mFrame.remaining());
+            ByteBuffer chunk = buffer.duplicate();
+            chunk.limit(chunk.position() + n);
+            mFrame.put(chunk);
+            buffer.position(buffer.position() + n);
+
+            if (!mFrame.hasRemaining()) {
+                ByteBuffer frame = mFrame;
+                mFrame = null;
+                frame.flip();
+                onFrame(frame);
+            }
+        }
+    }
+
+    private void onFrame(ByteBuffer frame) throws IOException {
+        byte flags = frame.get();
+        mFrameListener.onFrame(flags, frame.slice());
+    }
+
+    private static int checkLength(int length) throws IOException {
+        if (length < FrameCodec.FLAGS_SIZE || length > FrameCodec.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        return length;
+    }
+
+    interface FrameListener {
+        /**
+         * Called for every complete frame. The body is only valid until this method returns.
+         */
+        void onFrame(byte flags, ByteBuffer body) throws IOException;
+    }
+}
@@ -0,0 +1,152 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashedWheelTimer runs delayed tasks on a single thread. Tasks are put into the bucket of the wheel in which they
+ * expire, and the thread only looks at one bucket per tick, so scheduling and cancelling a task are O(1) no matter how
+ * many tasks are pending. Tasks run at most one tick late.
+ * <br>
+ * The timer is meant for the many short, cheap tasks of the connections, like heartbeats and timeouts. Tasks must not
+ * block, they all share one thread.
+ */
+
+class HashedWheelTimer {
+    private static final long TICK_MILLIS = 20;
+    private static final int WHEEL_SIZE = 1024;
+
+    private static HashedWheelTimer sShared;
+
+    private final long mTickNanos;
+    private final Timeout[] mWheel;
+    private final int mMask;
+    private final ConcurrentLinkedQueue<Timeout> mPending;
+    private final long mStartTime;
+    private long mTick;
+
+    /**
+     * Returns the timer which is shared by every connection of the process.
+     */
+    static synchronized HashedWheelTimer shared() {
+        if (sShared == null) {
+            sShared = new HashedWheelTimer(TICK_MILLIS, WHEEL_SIZE);
+        }
+        return sShared;
+    }
+
+    /**
+     * @param wheelSize Number of buckets, must be a power of two.
+     */
+    HashedWheelTimer(long tickMillis, int wheelSize) {
+        mTickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        mWheel = new Timeout[wheelSize];
+        mMask = wheelSize - 1;
+        mPending = new ConcurrentLinkedQueue<>();
+        mStartTime = System.nanoTime();
+
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                HashedWheelTimer.this.run();
+            }
+        }, "JRocket-timer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Runs the task on the timer's thread after the delay.
+     */
+    Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - mStartTime + unit.toNanos(delay));
+        mPending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (true) {
+            long sleep = mStartTime + mTickNanos * (mTick + 1) - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            addPending();
+            expire(mTick);
+            mTick++;
+        }
+    }
+
+    private void addPending() {
+        Timeout timeout;
+        while ((timeout = mPending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long expiresAt = timeout.deadline / mTickNanos;
+            timeout.remainingRounds = (expiresAt - mTick) / mWheel.length;
+            int bucket = (int) (Math.max(expiresAt, mTick) & mMask);
+            timeout.next = mWheel[bucket];
+            if (timeout.next != null) {
+                timeout.next.prev = timeout;
+            }
+            mWheel[bucket] = timeout;
+        }
+    }
+
+    private void expire(long tick) {
+        int bucket = (int) (tick & mMask);
+        Timeout timeout = mWheel[bucket];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.cancelled || timeout.remainingRounds <= 0) {
+                if (timeout.prev != null) {
+                    timeout.prev.next = next;
+                } else {
+                    mWheel[bucket] = next;
+                }
+                if (next != null) {
+                    next.prev = timeout.prev;
+                }
+                timeout.prev = timeout.next = null;
+                if (!timeout.cancelled) {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    /**
+     * A task which is waiting on the timer.
+     */
+    static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private volatile boolean cancelled;
+        private long remainingRounds;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Prevents the task from running. The timeout is removed from the wheel the next time its bucket is visited.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package xyz.farhanfarooqui.JRocket;
+
+/**
+ * The count, mean and percentiles of a {@link LatencyHistogram} at the moment it was taken. All times are in nanoseconds.
+ */
+
+public final class HistogramSnapshot {
+    private final long mCount;
+    private final double mMean;
+    private final long mP50;
+    private final long mP90;
+    private final long mP99;
+    private final long mP999;
+    private final long mMax;
+
+    HistogramSnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        mCount = count;
+        mMean = mean;
+        mP50 = p50;
+        mP90 = p90;
+        mP99 = p99;
+        mP999 = p999;
+        mMax = max;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public double getMean() {
+        return mMean;
+    }
+
+    public long getP50() {
+        return mP50;
+    }
+
+    public long getP90() {
+        return mP90;
+    }
+
+    public long getP99() {
+        return mP99;
+    }
+
+    public long getP999() {
+        return mP999;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{count=" + mCount + ", meanUs=" + (long) (mMean / 1000) + ", p50Us=" + mP50 / 1000 + ", p99Us=" + mP99 / 1000
+                + ", p999Us=" + mP999 / 1000 + ", maxUs=" + mMax / 1000 + "}";
+    }
+}
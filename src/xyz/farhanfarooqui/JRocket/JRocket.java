@@ -20,6 +20,46 @@ interface JRocket {
 
     int getHeartBeatRate();
 
+    void setMaxWriteBatchSize(int bytes);
+
+    int getMaxWriteBatchSize();
+
+    void setMaxWriteDelay(int milliseconds);
+
+    int getMaxWriteDelay();
+
+    void setTcpNoDelay(boolean on);
+
+    boolean getTcpNoDelay();
+
+    void setMaxQueueSize(int maxQueueSize);
+
+    int getMaxQueueSize();
+
+    void setMaxQueueBytes(long maxQueueBytes);
+
+    long getMaxQueueBytes();
+
+    void setOverflowPolicy(OverflowPolicy overflowPolicy);
+
+    OverflowPolicy getOverflowPolicy();
+
+    void setPayloadCodec(PayloadCodec payloadCodec);
+
+    PayloadCodec getPayloadCodec();
+
+    void setCompressionThreshold(int bytes);
+
+    int getCompressionThreshold();
+
+    void setCompressionDictionary(byte[] dictionary);
+
+    byte[] getCompressionDictionary();
+
+    CompressionStats getCompressionStats();
+
+    Metrics getMetrics();
+
     void setCoreThreadPoolSize(int coreThreadPoolSize);
 
     void setMaxThreadPoolSize(int maxThreadPoolSize);
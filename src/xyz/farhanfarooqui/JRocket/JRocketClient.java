@@ -1,46 +1,82 @@
 package xyz.farhanfarooqui.JRocket;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 import xyz.farhanfarooqui.JRocket.ClientListeners.OnReceiveListener;
+import xyz.farhanfarooqui.JRocket.ClientListeners.OnReceiveObjectListener;
+import xyz.farhanfarooqui.JRocket.ClientListeners.OnRequestListener;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 public class JRocketClient implements JRocket {
-    private static JRocketClient mRocketClient;
-    private static Socket mSocket;
-    private static HashMap<String, OnReceiveListener> mEventLists;
-    private static Communicator mCommunicator;
-    private static boolean mKeepAlive = false;
-    private static ExecutorService mExecutorService;
+    private static final long HELLO_TIMEOUT_MILLIS = 5000;
+    private static final long END_TIMEOUT_MILLIS = 1000;
+
+    private static ExecutorService sSharedExecutor;
+    private static ExecutorService sSharedVirtualThreadExecutor;
+    private static EventLoopGroup sSharedEventLoopGroup;
+
+    private final EventTable mEventLists = new EventTable();
+    private volatile Socket mSocket;
+    private volatile Connection mConnection;
+    private volatile boolean mKeepAlive = false;
+    private volatile ExecutorService mExecutorService;
+    private EventLoopGroup mEventLoopGroup;
+    private Executor mDispatchExecutor;
+    private SerialExecutor mDispatcher;
     private RocketClientListener mRocketClientListener;
+    private Engine mEngine = Engine.THREAD_POOL;
     private int mHeartBeatRate = 0;
+    private int mMaxWriteBatchSize = 64 * 1024;
+    private int mMaxWriteDelay = 0;
+    private boolean mTcpNoDelay = true;
+    private int mMaxQueueSize = 0;
+    private long mMaxQueueBytes = 0;
+    private OverflowPolicy mOverflowPolicy = OverflowPolicy.BLOCK;
+    private PayloadCodec mPayloadCodec = new JsonPayloadCodec();
+    private int mCompressionThreshold = 0;
+    private byte[] mCompressionDictionary;
+    private final CompressionStats mCompressionStats = new CompressionStats();
+    private final Metrics mMetrics = new Metrics(new Metrics.ConnectionSource() {
+        @Override
+        public Connection[] getConnections() {
+            Connection connection = mConnection;
+            return connection != null && isConnected() ? new Connection[]{connection} : new Connection[0];
+        }
+    });
     private String mHost;
     private int mPort;
+    private int mReconnectDelay = 0;
+    private int mMaxReconnectDelay = 0;
+    private volatile int mReconnectAttempts;
+    private volatile HashedWheelTimer.Timeout mReconnect;
+    private volatile boolean mClosing;
+    private volatile boolean mRetry;
+    private boolean mSessionsEnabled = true;
+    private volatile String mSessionToken;
+    private volatile String mClientId;
+    private volatile boolean mResumed;
+    /**
+     * Events of the session which were received on earlier connections.
+     */
+    private volatile long mSessionReceived;
+    private volatile ConnectionListener mListener;
 
-    private boolean disconnected = false;
-
-    {
-        mEventLists = new HashMap<>();
-    }
-
-    private static Client.ClientListener clientListener = new Client.ClientListener() {
-        @Override
-        public void onEventReceive(JRocket JRocket, String event, JSONObject data) {
-            ((JRocketClient) JRocket).onReceiveEvent(event, data);
-        }
-
-        @Override
-        public void onClientDisconnect(JRocket JRocket) {
-            ((JRocketClient) JRocket).onDisconnect();
-        }
-    };
+    private volatile boolean disconnected = false;
 
     private JRocketClient(String host, int port) {
         this(host, port, null);
@@ -50,30 +86,80 @@ public class JRocketClient implements JRocket {
         this.mHost = host;
         this.mPort = port;
         this.mRocketClientListener = rocketClientListener;
-        mExecutorService = Executors.newFixedThreadPool(2);
     }
 
+    /**
+     * The pool which connects the clients and runs their listeners, unless they were given another executor. Its idle
+     * threads terminate after a minute.
+     */
+    private static synchronized ExecutorService sharedExecutor() {
+        if (sSharedExecutor == null) {
+            sSharedExecutor = Executors.newCachedThreadPool();
+        }
+        return sSharedExecutor;
+    }
+
+    private static synchronized ExecutorService sharedVirtualThreadExecutor() {
+        if (sSharedVirtualThreadExecutor == null) {
+            sSharedVirtualThreadExecutor = Utils.newVirtualThreadPerTaskExecutor();
+        }
+        return sSharedVirtualThreadExecutor;
+    }
+
+    /**
+     * The event loops of clients on {@link Engine#NIO} which weren't given an {@link EventLoopGroup}. They are daemon
+     * threads, so they don't keep the JVM alive.
+     */
+    private static synchronized EventLoopGroup sharedEventLoopGroup() throws IOException {
+        if (sSharedEventLoopGroup == null) {
+            sSharedEventLoopGroup = new EventLoopGroup(0, "JRocket-client-nio-", true);
+        }
+        return sSharedEventLoopGroup;
+    }
 
     /**
      * Connects the client to the server. It does its operations on a separate thread to avoid blocking the
-     * main thread. Call {@link #setHeartBeatRate(int)} method before connecting.
+     * main thread. Call {@link #setHeartBeatRate(int)} method before connecting. If the client had a session, it tries to resume it.
      */
     public void connect() {
-        Thread thread = new Thread(new ConnectRunnable());
-        thread.start();
+        mClosing = false;
+        cancelReconnect();
+        open();
+    }
+
+    private void open() {
+        if (mDispatcher == null) {
+            mDispatchExecutor = mEngine == Engine.VIRTUAL_THREADS ? sharedVirtualThreadExecutor() : sharedExecutor();
+            mDispatcher = new SerialExecutor(mDispatchExecutor);
+        }
+        if (mEngine == Engine.VIRTUAL_THREADS) {
+            sharedVirtualThreadExecutor().execute(new ConnectRunnable());
+        } else {
+            sharedExecutor().execute(new ConnectRunnable());
+        }
     }
 
     private class ConnectRunnable implements Runnable {
         @Override
         public void run() {
             try {
-                mSocket = new Socket(mHost, mPort);
-                mSocket.setSoTimeout(getHeartBeatRate());
-                mCommunicator = new Communicator(mRocketClient, mSocket, mExecutorService);
-                mCommunicator.setClientListener(clientListener);
-                mCommunicator.start();
-                disconnected = false;
-                mRocketClient.onConnect();
+                if (mEngine == Engine.NIO) {
+                    connectNio();
+                    return;
+                }
+                ExecutorService executorService = mExecutorService;
+                if (executorService == null) {
+                    executorService = mEngine == Engine.VIRTUAL_THREADS ? sharedVirtualThreadExecutor() : sharedExecutor();
+                }
+                Socket socket = new Socket(mHost, mPort);
+                socket.setKeepAlive(mKeepAlive);
+                Communicator communicator = new Communicator(JRocketClient.this, socket, executorService);
+                communicator.setClientListener(beginConnection());
+                communicator.setResponseExecutor(mDispatcher);
+                mSocket = socket;
+                mConnection = communicator;
+                communicator.start();
+                onConnect();
             } catch (IOException e) {
                 e.printStackTrace();
                 onConnectFailed();
@@ -82,29 +168,122 @@ public class JRocketClient implements JRocket {
     }
 
     /**
-     * Prepares the client to connect to the host.
+     * Connects on an event loop. The address is resolved on the calling thread, the connect itself doesn't block.
+     */
+    private void connectNio() throws IOException {
+        if (mEventLoopGroup == null) {
+            mEventLoopGroup = sharedEventLoopGroup();
+        }
+        InetSocketAddress address = new InetSocketAddress(mHost, mPort);
+        final SocketChannel channel = SocketChannel.open();
+        final NioConnection connection;
+        try {
+            channel.socket().setKeepAlive(mKeepAlive);
+            connection = new NioConnection(this, channel, mEventLoopGroup.next());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        connection.setClientListener(beginConnection());
+        connection.setResponseExecutor(mDispatcher);
+        connection.connect(address, new NioConnection.ConnectListener() {
+            @Override
+            public void onConnect() {
+                mSocket = channel.socket();
+                mConnection = connection;
+                JRocketClient.this.onConnect();
+            }
+
+            @Override
+            public void onConnectFailed() {
+                JRocketClient.this.onConnectFailed();
+            }
+        });
+    }
+
+    /**
+     * Prepares the client to connect to the host. Every call returns a new client with its own connection and listeners.
      * Call {@link #connect()} method to connect to the host
      */
     public static JRocketClient prepare(String host, int port) {
-        mRocketClient = new JRocketClient(host, port);
-        return mRocketClient;
+        return new JRocketClient(host, port);
     }
 
     /**
-     * Prepares the client to connect to the host.
+     * Prepares the client to connect to the host. Every call returns a new client with its own connection and listeners.
      * Call {@link #connect()} method to connect to the host
      */
     public static JRocketClient prepare(String host, int port, RocketClientListener rocketClientListener) {
-        mRocketClient = new JRocketClient(host, port, rocketClientListener);
-        return mRocketClient;
+        return new JRocketClient(host, port, rocketClientListener);
+    }
+
+    /**
+     * Called before a new connection starts. The events which were received on the last connection count for the session if it
+     * belonged to it.
+     *
+     * @return The listener of the new connection.
+     */
+    private ConnectionListener beginConnection() {
+        ConnectionListener previous = mListener;
+        if (previous != null) {
+            mSessionReceived += previous.close();
+        }
+        disconnected = true;
+        ConnectionListener listener = new ConnectionListener();
+        mListener = listener;
+        return listener;
     }
 
     /**
-     * Called when the connection is successfully established
+     * Called when the connection is successfully established. The client says hello to the server, which starts a session or resumes the
+     * one the client has, and the listener is told once the server answered.
      */
     private void onConnect() {
-        if (mRocketClientListener != null)
-            mRocketClientListener.onConnect(mRocketClient);
+        final Connection connection = mConnection;
+        if (!mEventLists.isEmpty()) {
+            connection.send(mEventLists.toFrame());
+        }
+        if (!mSessionsEnabled) {
+            onConnected(connection, false);
+            return;
+        }
+        JSONObject hello;
+        try {
+            hello = new JSONObject().put("received", mSessionReceived);
+            if (mSessionToken != null) {
+                hello.put("token", mSessionToken);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            onConnected(connection, false);
+            return;
+        }
+        final ConnectionListener listener = mListener;
+        connection.request(Session.HELLO, hello, JSONObject.class, HELLO_TIMEOUT_MILLIS, true).whenComplete(new BiConsumer<JSONObject, Throwable>() {
+            @Override
+            public void accept(JSONObject response, Throwable throwable) {
+                listener.onHello(connection, response, throwable);
+            }
+        });
+    }
+
+    /**
+     * Tells the listener that the client is connected, on the dispatch executor, unless the connection was lost meanwhile.
+     */
+    private void onConnected(final Connection connection, final boolean resumed) {
+        mDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (connection.getDisconnectReason() != null) {
+                    return;
+                }
+                mResumed = resumed;
+                mReconnectAttempts = 0;
+                disconnected = false;
+                if (mRocketClientListener != null)
+                    mRocketClientListener.onConnect(JRocketClient.this);
+            }
+        });
     }
 
     /**
@@ -112,52 +291,290 @@ public class JRocketClient implements JRocket {
      */
     private void onConnectFailed() {
         if (mRocketClientListener != null)
-            mRocketClientListener.onConnectFailed(mRocketClient);
+            mRocketClientListener.onConnectFailed(this);
+        if (!mClosing && mReconnectDelay > 0) {
+            reconnect();
+        }
     }
 
     /**
-     * Disconnects the client from the server
+     * Disconnects the client from the server. It stops reconnecting, and a session the client has is ended first, so the server doesn't keep it.
      */
     public void disconnect() {
-        mCommunicator.close();
+        mClosing = true;
+        cancelReconnect();
+        String token = mSessionToken;
+        mSessionToken = null;
+        final Connection connection = mConnection;
+        if (connection == null) {
+            return;
+        }
+        if (token == null || !isConnected()) {
+            connection.close();
+            return;
+        }
+        connection.request(Session.END, new JSONObject(), JSONObject.class, END_TIMEOUT_MILLIS).whenComplete(new BiConsumer<JSONObject, Throwable>() {
+            @Override
+            public void accept(JSONObject response, Throwable throwable) {
+                connection.close();
+            }
+        });
     }
 
     /**
-     * Called when the client is disconnected from the server
+     * Called when the client is disconnected from the server. The listener is told on the dispatch executor, after the answer to the hello, so a
+     * connection which was lost before the client could resume its session counts as a failed connect.
      */
     private void onDisconnect() {
-        if (mRocketClientListener != null && !disconnected) {
-            disconnected = true;
-            mRocketClientListener.onDisconnect(mRocketClient);
+        mDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean connected = !disconnected;
+                disconnected = true;
+                if (mRocketClientListener != null) {
+                    if (connected) {
+                        mRocketClientListener.onDisconnect(JRocketClient.this);
+                    } else {
+                        mRocketClientListener.onConnectFailed(JRocketClient.this);
+                    }
+                }
+                boolean retry = mRetry;
+                mRetry = false;
+                if (!mClosing && (mReconnectDelay > 0 || retry)) {
+                    reconnect();
+                }
+            }
+        });
+    }
+
+    /**
+     * Connects again after a delay which doubles with every failed attempt up to the maximum. The delay is picked at random from its upper half, so
+     * clients which lost their connections at the same time don't all come back at once.
+     */
+    private void reconnect() {
+        int attempt = mReconnectAttempts++;
+        long delay = Math.min(Math.max(mMaxReconnectDelay, mReconnectDelay), (long) mReconnectDelay << Math.min(attempt, 30));
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+        mReconnect = HashedWheelTimer.shared().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                if (!mClosing) {
+                    open();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelReconnect() {
+        HashedWheelTimer.Timeout reconnect = mReconnect;
+        if (reconnect != null) {
+            reconnect.cancel();
         }
     }
 
+    /**
+     * Makes the client reconnect by itself when the connection is lost or can't be made, until {@link #disconnect()} is called. The delay starts at
+     * the initial one and doubles with every failed attempt up to the maximum, with random jitter. If the server keeps sessions, see
+     * {@link JRocketServer#setSessionTimeout(int)}, the client resumes its session and gets the events it missed. Zero disables it, which is the default.
+     */
+    public void setAutoReconnect(int initialDelayMillis, int maxDelayMillis) {
+        mReconnectDelay = initialDelayMillis;
+        mMaxReconnectDelay = maxDelayMillis;
+    }
+
+    /**
+     * Returns true if the client resumed its session when it connected last, so the server kept its data and rooms and it got the events it missed.
+     * If it's false after a reconnect, the session was lost and the state has to be restored.
+     */
+    public boolean isResumed() {
+        return mResumed;
+    }
+
+    /**
+     * Returns the id the server gave the client, or null until the server told it. The client keeps it while it resumes its session.
+     */
+    public String getClientId() {
+        return mClientId;
+    }
+
+    /**
+     * Links between the nodes of a {@link Cluster} don't have sessions.
+     */
+    void setSessionsEnabled(boolean enabled) {
+        mSessionsEnabled = enabled;
+    }
+
     /**
      * Send data to the server
      */
     public boolean send(String event, JSONObject data) {
-        if (isConnected()) {
-            mCommunicator.send(event, data);
+        return send(event, (Object) data);
+    }
+
+    /**
+     * Send data to the server, which is converted by the {@link PayloadCodec}
+     */
+    public boolean send(String event, Object data) {
+        Connection connection = mConnection;
+        if (connection != null && isConnected()) {
+            connection.send(event, data);
             return true;
         } else {
             return false;
         }
     }
 
+    /**
+     * Sends a request to the server and returns the future of its response. The server answers it in a listener which was registered with
+     * {@link JRocketServer#onRequest(String, xyz.farhanfarooqui.JRocket.ServerListeners.OnRequestListener)}. The future completes on the dispatch
+     * executor, and fails if the client disconnects or no response arrives in time.
+     *
+     * @param timeoutMillis Time after which the future fails with a {@link java.util.concurrent.TimeoutException}. Zero means no timeout.
+     */
+    public CompletableFuture<JSONObject> request(String event, JSONObject data, long timeoutMillis) {
+        return request(event, data, JSONObject.class, timeoutMillis);
+    }
+
+    /**
+     * Sends a request to the server and returns the future of its response, decoded into the type by the {@link PayloadCodec}.
+     *
+     * @param timeoutMillis Time after which the future fails with a {@link java.util.concurrent.TimeoutException}. Zero means no timeout.
+     */
+    public <T> CompletableFuture<T> request(String event, Object data, Class<T> type, long timeoutMillis) {
+        Connection connection = mConnection;
+        if (connection == null || !isConnected()) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("Not connected"));
+            return future;
+        }
+        return connection.request(event, data, type, timeoutMillis);
+    }
+
     /**
      * Create an event receive listener
      */
     public void onReceive(String event, OnReceiveListener onReceiveListener) {
-        mEventLists.put(event, onReceiveListener);
+        onReceive(event, onReceiveListener, false);
+    }
+
+    /**
+     * Create an event receive listener
+     *
+     * @param inline If true, the listener is called directly on the thread which read the event instead of the dispatch executor. Only use it for
+     *               listeners which are very cheap and never block.
+     */
+    public void onReceive(String event, final OnReceiveListener onReceiveListener, boolean inline) {
+        addEventHandler(event, new EventHandler(JSONObject.class, inline) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onReceiveListener.onReceive((JSONObject) data);
+            }
+        });
+    }
+
+    /**
+     * Create an event receive listener which receives the data decoded into the type by the {@link PayloadCodec}
+     */
+    public <T> void onReceive(String event, Class<T> type, OnReceiveObjectListener<T> onReceiveListener) {
+        onReceive(event, type, onReceiveListener, false);
+    }
+
+    /**
+     * Create an event receive listener which receives the data decoded into the type by the {@link PayloadCodec}
+     *
+     * @param inline If true, the listener is called directly on the thread which read the event instead of the dispatch executor.
+     */
+    public <T> void onReceive(String event, final Class<T> type, final OnReceiveObjectListener<T> onReceiveListener, boolean inline) {
+        addEventHandler(event, new EventHandler(type, inline) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onReceiveListener.onReceive(type.cast(data));
+            }
+        });
+    }
+
+    /**
+     * Create a listener for requests which the server sends with {@link Client#request(String, JSONObject, long)}. The listener answers with the
+     * {@link Reply}, right away or later from any thread.
+     */
+    public void onRequest(String event, OnRequestListener onRequestListener) {
+        onRequest(event, onRequestListener, false);
+    }
+
+    /**
+     * Create a listener for requests which the server sends with {@link Client#request(String, JSONObject, long)}.
+     *
+     * @param inline If true, the listener is called directly on the thread which read the request instead of the dispatch executor.
+     */
+    public void onRequest(String event, final OnRequestListener onRequestListener, boolean inline) {
+        addEventHandler(event, new EventHandler(JSONObject.class, inline) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onRequestListener.onRequest((JSONObject) data, reply);
+            }
+        });
+    }
+
+    /**
+     * Registers the handler and announces the id of a new event to the server.
+     */
+    private void addEventHandler(String event, EventHandler handler) {
+        handler.setCounters(mMetrics.event(event));
+        int id = mEventLists.put(event, handler);
+        Connection connection = mConnection;
+        if (id >= 0 && connection != null && isConnected()) {
+            connection.send(EventTable.toFrame(event, id));
+        }
+    }
+
+    /**
+     * Sets the executor which runs the listeners. Events are always handled one at a time and in the order they arrived. By default a pool which is
+     * shared by all clients is used, or virtual threads for {@link Engine#VIRTUAL_THREADS}. Must be called before {@link #connect()} method is called.
+     */
+    public void setDispatchExecutor(Executor executor) {
+        mDispatchExecutor = executor;
+        mDispatcher = new SerialExecutor(executor);
     }
 
     /**
      * Called when the client receives an event
      */
-    private void onReceiveEvent(String event, JSONObject data) {
-        if (mEventLists.containsKey(event)) {
-            mEventLists.get(event).onReceive(data);
+    private void onReceiveEvent(String event, ByteBuffer payload, boolean compressed, Reply reply) throws IOException {
+        onReceiveEvent(mEventLists.get(event), payload, compressed, reply);
+    }
+
+    /**
+     * Called when the client receives an event with the id it announced for it
+     */
+    private void onReceiveEvent(int eventId, ByteBuffer payload, boolean compressed, Reply reply) throws IOException {
+        onReceiveEvent(mEventLists.get(eventId), payload, compressed, reply);
+    }
+
+    private void onReceiveEvent(final EventHandler handler, ByteBuffer payload, boolean compressed, Reply request) throws IOException {
+        if (handler == null) {
+            mMetrics.onEventDropped();
+            return;
+        }
+        final long received = System.nanoTime();
+        handler.getCounters().onReceived(payload.remaining());
+        if (compressed) {
+            payload = Compression.inflate(payload, mCompressionDictionary, mCompressionStats);
+        }
+        final Object data = handler.decode(payload, mPayloadCodec);
+        mMetrics.onDecoded(System.nanoTime() - received);
+        // Listeners for requests leave events which aren't requests unanswered
+        final Reply reply = request != null ? request : Reply.NONE;
+        if (handler.isInline()) {
+            handler.onReceive(data, null, reply);
+            return;
         }
+        mDispatcher.execute(new Runnable() {
+            @Override
+            public void run() {
+                mMetrics.onDispatched(System.nanoTime() - received);
+                handler.onReceive(data, null, reply);
+            }
+        });
     }
 
 
@@ -165,7 +582,8 @@ public class JRocketClient implements JRocket {
      * Returns true if the client has ever connected to the server
      */
     public boolean hasConnected() {
-        return mSocket.isConnected();
+        Socket socket = mSocket;
+        return socket != null && socket.isConnected();
     }
 
     /**
@@ -176,18 +594,22 @@ public class JRocketClient implements JRocket {
     }
 
     /**
-     * Set the option for Keep-Alive
+     * Set the option for Keep-Alive. It applies to the current connection and to every connection the client opens afterwards, including reconnects.
      */
     public void setKeepAlive(boolean on) throws SocketException {
         this.mKeepAlive = on;
-        mSocket.setKeepAlive(on);
+        Socket socket = mSocket;
+        if (socket != null) {
+            socket.setKeepAlive(on);
+        }
     }
 
     /**
      * Returns true if Keep-Alive is turned on
      */
     public boolean getKeepAlive() throws SocketException {
-        return mSocket.getKeepAlive();
+        Socket socket = mSocket;
+        return socket != null ? socket.getKeepAlive() : mKeepAlive;
     }
 
     /**
@@ -228,12 +650,240 @@ public class JRocketClient implements JRocket {
     }
 
     /**
-     * Set the heartbeat rate in milliseconds. Client will send a heartbeat to the server in n milliseconds. Must be called before {@link #connect()} method is called.
+     * Set the heartbeat rate in milliseconds. Client will send a ping to the server every n milliseconds, which measures the round trip time, and
+     * disconnects if nothing was received for 3 * n milliseconds. Zero disables heartbeats. Must be called before {@link #connect()} method is called.
      */
     public void setHeartBeatRate(int milliseconds) {
         this.mHeartBeatRate = milliseconds;
     }
 
+    /**
+     * Get the maximum number of bytes which are written to the socket at once
+     */
+    @Override
+    public int getMaxWriteBatchSize() {
+        return mMaxWriteBatchSize;
+    }
+
+    /**
+     * Set the maximum number of bytes which are written to the socket at once. Events which are queued while the client is writing are collected and
+     * written together with a single flush, up to this many bytes. Set it to 1 to write and flush every event on its own.
+     */
+    @Override
+    public void setMaxWriteBatchSize(int bytes) {
+        this.mMaxWriteBatchSize = bytes;
+    }
+
+    /**
+     * Get the maximum time in milliseconds an event waits for more events before it's written
+     */
+    @Override
+    public int getMaxWriteDelay() {
+        return mMaxWriteDelay;
+    }
+
+    /**
+     * Set the maximum time in milliseconds an event waits for more events before it's written, so that more of them fit in one write. The default is 0,
+     * which writes whatever is queued immediately and is best for latency-sensitive applications.
+     */
+    @Override
+    public void setMaxWriteDelay(int milliseconds) {
+        this.mMaxWriteDelay = milliseconds;
+    }
+
+    /**
+     * Returns true if small writes are sent right away instead of being delayed by Nagle's algorithm
+     */
+    @Override
+    public boolean getTcpNoDelay() {
+        return mTcpNoDelay;
+    }
+
+    /**
+     * Set whether TCP_NODELAY is enabled on the sockets of new connections. It's on by default: events are already batched by
+     * {@link #setMaxWriteBatchSize(int)} and {@link #setMaxWriteDelay(int)}, and Nagle's algorithm would hold back small events, pings and
+     * pongs until the previous write is acknowledged, which adds up to tens of milliseconds to every round trip.
+     */
+    @Override
+    public void setTcpNoDelay(boolean on) {
+        this.mTcpNoDelay = on;
+    }
+
+    /**
+     * Get the maximum number of events which can be queued for the server
+     */
+    @Override
+    public int getMaxQueueSize() {
+        return mMaxQueueSize;
+    }
+
+    /**
+     * Set the maximum number of events which can be queued for the server before the overflow policy applies. Zero means no limit, which is the default.
+     * Only applies to connections which are made afterwards.
+     */
+    @Override
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.mMaxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Get the maximum number of bytes which can be queued for the server
+     */
+    @Override
+    public long getMaxQueueBytes() {
+        return mMaxQueueBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes which can be queued for the server before the overflow policy applies. Zero means no limit, which is the default.
+     * Only applies to connections which are made afterwards.
+     */
+    @Override
+    public void setMaxQueueBytes(long maxQueueBytes) {
+        this.mMaxQueueBytes = maxQueueBytes;
+    }
+
+    /**
+     * Get the policy which applies when the queue of the server is full
+     */
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return mOverflowPolicy;
+    }
+
+    /**
+     * Set the policy which applies when the queue of the server is full. The default is {@link OverflowPolicy#BLOCK}. Only applies to connections which
+     * are made afterwards.
+     */
+    @Override
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.mOverflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Get the codec which converts the data of events to bytes and back
+     */
+    @Override
+    public PayloadCodec getPayloadCodec() {
+        return mPayloadCodec;
+    }
+
+    /**
+     * Set the codec which converts the data of events to bytes and back. The default is {@link JsonPayloadCodec}. The server has to use the same codec.
+     */
+    @Override
+    public void setPayloadCodec(PayloadCodec payloadCodec) {
+        this.mPayloadCodec = payloadCodec;
+    }
+
+    /**
+     * Get the minimum size in bytes of payloads which are compressed
+     */
+    @Override
+    public int getCompressionThreshold() {
+        return mCompressionThreshold;
+    }
+
+    /**
+     * Set the minimum size in bytes of payloads which are compressed with deflate. Smaller payloads, and payloads which don't get smaller, are sent as they
+     * are. Zero disables compression, which is the default. The server can read compressed payloads whatever their own threshold is.
+     */
+    @Override
+    public void setCompressionThreshold(int bytes) {
+        this.mCompressionThreshold = bytes;
+    }
+
+    /**
+     * Get the preset dictionary which is used for compression
+     */
+    @Override
+    public byte[] getCompressionDictionary() {
+        return mCompressionDictionary;
+    }
+
+    /**
+     * Set a preset dictionary for compression, e.g. a typical payload. It makes small payloads compress much better. The server has to set the same
+     * dictionary, payloads which were compressed with another dictionary are rejected and close the connection.
+     */
+    @Override
+    public void setCompressionDictionary(byte[] dictionary) {
+        this.mCompressionDictionary = dictionary;
+    }
+
+    /**
+     * Returns the statistics of compression, e.g. to tune the compression threshold
+     */
+    @Override
+    public CompressionStats getCompressionStats() {
+        return mCompressionStats;
+    }
+
+    /**
+     * Returns the metrics of the client. They are kept over reconnects. Register them with
+     * {@code ManagementFactory.getPlatformMBeanServer().registerMBean(client.getMetrics(), name)} to expose them over JMX.
+     */
+    @Override
+    public Metrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Returns the smoothed round trip time to the server in nanoseconds, measured with the heartbeat pings, or -1 until one was answered. Requires
+     * {@link #setHeartBeatRate(int)}.
+     */
+    public long getRoundTripTime() {
+        Connection connection = mConnection;
+        return connection != null ? connection.getRoundTripTime() : -1;
+    }
+
+    /**
+     * Returns the mean deviation of the round trip time to the server in nanoseconds, or -1 until a ping was answered.
+     */
+    public long getRoundTripJitter() {
+        Connection connection = mConnection;
+        return connection != null ? connection.getRoundTripJitter() : -1;
+    }
+
+    /**
+     * Returns why the client was disconnected last, or null if it's connected or never was.
+     */
+    public DisconnectReason getDisconnectReason() {
+        Connection connection = mConnection;
+        return connection != null ? connection.getDisconnectReason() : null;
+    }
+
+    /**
+     * Returns the engine the client is running on.
+     */
+    public Engine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Sets the engine of the client. Must be called before {@link #connect()} method is called. On {@link Engine#NIO} the client runs on an event loop
+     * which it shares with other clients, so thousands of clients can run in one process.
+     */
+    public void setEngine(Engine engine) {
+        mEngine = engine;
+    }
+
+    /**
+     * Sets the event loops of the client on {@link Engine#NIO}. Clients which are given the same group share its threads. By default every client
+     * uses one shared group with one loop per processor. Must be called before {@link #connect()} method is called.
+     */
+    public void setEventLoopGroup(EventLoopGroup eventLoopGroup) {
+        mEventLoopGroup = eventLoopGroup;
+    }
+
+    /**
+     * Sets the executor which runs the reads and writes of the client on {@link Engine#THREAD_POOL} and {@link Engine#VIRTUAL_THREADS}. Each connection
+     * keeps two of its threads busy while it's connected, so a shared pool must be large enough for all of its clients. By default the clients share a
+     * cached pool, or use virtual threads. It applies from the next connection on.
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        mExecutorService = executorService;
+    }
+
     /**
      * Ignored on client side
      */
@@ -269,6 +919,83 @@ public class JRocketClient implements JRocket {
         return mSocket.getSoTimeout();
     }
 
+    /**
+     * Listens to one connection. It counts the events it delivers for the session, and stops delivering once the client moved on to the next
+     * connection, so every event is either counted or replayed by the server.
+     */
+    private final class ConnectionListener implements Client.ClientListener {
+        private long mReceived;
+        private boolean mConfirmed;
+        private boolean mClosed;
+
+        @Override
+        public synchronized void onEventReceive(JRocket JRocket, String event, ByteBuffer payload, boolean compressed, Reply reply) throws IOException {
+            if (mClosed) {
+                return;
+            }
+            if (reply == null) {
+                mReceived++;
+            }
+            onReceiveEvent(event, payload, compressed, reply);
+        }
+
+        @Override
+        public synchronized void onEventReceive(JRocket JRocket, int eventId, ByteBuffer payload, boolean compressed, Reply reply) throws IOException {
+            if (mClosed) {
+                return;
+            }
+            if (reply == null) {
+                mReceived++;
+            }
+            onReceiveEvent(eventId, payload, compressed, reply);
+        }
+
+        @Override
+        public void onClientDisconnect(JRocket JRocket) {
+            onDisconnect();
+        }
+
+        /**
+         * Called with the answer of the server to the hello, on the thread which read it, before any event of the session.
+         */
+        synchronized void onHello(Connection connection, JSONObject response, Throwable throwable) {
+            if (mClosed) {
+                return;
+            }
+            if (throwable != null) {
+                if (connection.getDisconnectReason() == null) {
+                    // The server doesn't know sessions
+                    mSessionToken = null;
+                    onConnected(connection, false);
+                }
+                return;
+            }
+            if (response.optBoolean("retry")) {
+                mRetry = true;
+                connection.close();
+                return;
+            }
+            mClientId = response.optString("id", null);
+            boolean resumed = response.optBoolean("resumed");
+            if (!resumed) {
+                mSessionToken = response.optString("token", null);
+                mSessionReceived = 0;
+            }
+            mConfirmed = resumed || mSessionToken != null;
+            onConnected(connection, resumed);
+        }
+
+        /**
+         * Stops delivering events.
+         *
+         * @return Number of events which were received for the session.
+         */
+        synchronized long close() {
+            mClosed = true;
+            return mConfirmed ? mReceived : 0;
+        }
+    }
+
     public interface RocketClientListener {
         void onConnect(JRocketClient rocketClient);
 
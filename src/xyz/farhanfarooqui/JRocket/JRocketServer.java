@@ -1,30 +1,100 @@
 package xyz.farhanfarooqui.JRocket;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 import xyz.farhanfarooqui.JRocket.ServerListeners.OnClientConnectListener;
 import xyz.farhanfarooqui.JRocket.ServerListeners.OnClientDisconnectListener;
 import xyz.farhanfarooqui.JRocket.ServerListeners.OnReceiveListener;
+import xyz.farhanfarooqui.JRocket.ServerListeners.OnReceiveObjectListener;
+import xyz.farhanfarooqui.JRocket.ServerListeners.OnRequestListener;
 import xyz.farhanfarooqui.JRocket.ServerListeners.OnServerStopListener;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
 
 public class JRocketServer implements JRocket {
+    private static final int DEFAULT_BACKLOG = 1024;
+    /**
+     * Time a client which connects while sessions are enabled has to say hello, before it's announced without a session.
+     */
+    private static final long HELLO_TIMEOUT_MILLIS = 5000;
 
-    private static JRocketServer mRocketServer;
-    private static ServerSocket mServerSocket;
-    private static volatile ArrayList<Client> mClients;
-    private static HashMap<String, OnReceiveListener> mEventLists;
-    private static ExecutorService mExecutorService;
+    private ServerSocket mServerSocket;
+    private ServerSocket[] mServerSockets;
+    private final ClientRegistry mClients;
+    private final ConcurrentHashMap<String, ClientRegistry> mRooms;
+    private final EventTable mEventLists;
+    private volatile Executor mDispatchExecutor;
+    private final List<ExecutorService> mOwnedDispatchExecutors = new ArrayList<>();
+    private ExecutorService mExecutorService;
+    /**
+     * Sets up the clients of accepted sockets, apart from the dispatch executor which users can replace.
+     */
+    private final ExecutorService mSetupExecutor;
+    private final ForkJoinPool mFanoutPool;
+    private final Fanout mFanout;
+    private EventLoopGroup mEventLoopGroup;
+    private final Engine mEngine;
+    private volatile Cluster mCluster;
+    private final AtomicBoolean mStopNotified = new AtomicBoolean();
+    private final AdmissionControl mAdmission = new AdmissionControl();
+    private final AtomicInteger mSettingUp = new AtomicInteger();
+    private final ConcurrentHashMap<String, Session> mSessions = new ConcurrentHashMap<>();
+    private final EventHandler mHelloHandler;
+    private volatile boolean mStopping;
     private int heartBeatRate = 0;
+    private int maxWriteBatchSize = 64 * 1024;
+    private int maxWriteDelay = 0;
+    private boolean tcpNoDelay = true;
+    private int maxQueueSize = 0;
+    private long maxQueueBytes = 0;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int sessionTimeout = 0;
+    private int replayBufferSize = 256;
+    private PayloadCodec payloadCodec = new JsonPayloadCodec();
+    private int compressionThreshold = 0;
+    private byte[] compressionDictionary;
+    private final CompressionStats compressionStats = new CompressionStats();
+    private final Metrics metrics = new Metrics(new Metrics.ConnectionSource() {
+        @Override
+        public Connection[] getConnections() {
+            Client[] clients = mClients.snapshot();
+            Connection[] connections = new Connection[clients.length];
+            for (int i = 0; i < clients.length; i++) {
+                connections[i] = clients[i].getConnection();
+            }
+            return connections;
+        }
+    });
 
     // Listeners
 
@@ -32,30 +102,180 @@ public class JRocketServer implements JRocket {
     private OnClientConnectListener mOnClientConnectListener;
     private OnClientDisconnectListener mOnClientDisconnectListener;
 
-    private JRocketServer(int coreThreadPoolSize) {
-        mClients = new ArrayList<>();
-        mEventLists = new HashMap<>();
-        mExecutorService = Executors.newFixedThreadPool(coreThreadPoolSize);
+    private JRocketServer(int threads, Engine engine) throws IOException {
+        mClients = new ClientRegistry();
+        mRooms = new ConcurrentHashMap<>();
+        mEventLists = new EventTable();
+        mEngine = engine;
+        if (engine == Engine.NIO) {
+            mEventLoopGroup = new EventLoopGroup(threads);
+            mDispatchExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        } else if (engine == Engine.VIRTUAL_THREADS) {
+            mExecutorService = Utils.newVirtualThreadPerTaskExecutor();
+            mDispatchExecutor = Utils.newVirtualThreadPerTaskExecutor();
+        } else {
+            mExecutorService = Executors.newFixedThreadPool(threads);
+            mDispatchExecutor = Executors.newCachedThreadPool();
+        }
+        mSetupExecutor = engine == Engine.VIRTUAL_THREADS ? Utils.newVirtualThreadPerTaskExecutor() : Executors.newCachedThreadPool();
+        mOwnedDispatchExecutors.add((ExecutorService) mDispatchExecutor);
+        int processors = Runtime.getRuntime().availableProcessors();
+        mFanoutPool = new ForkJoinPool(processors, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        mFanout = new Fanout(mFanoutPool, processors);
+
+        mHelloHandler = new EventHandler(JSONObject.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onHello((JSONObject) data, client, reply);
+            }
+        };
+        addEventHandler(Session.HELLO, mHelloHandler);
+        addEventHandler(Session.END, new EventHandler(JSONObject.class, true) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                Session session = client.getSession();
+                if (session != null) {
+                    session.end();
+                }
+                reply.send(new JSONObject());
+            }
+        });
     }
 
+    /**
+     * Starts listening on the port with the {@link Engine#THREAD_POOL} engine.
+     *
+     * @param coreThreadPoolSize Size of the thread pool. One client will require two threads.
+     */
     public static JRocketServer listen(int port, int coreThreadPoolSize) throws IOException {
-        if (mRocketServer == null) {
-            mRocketServer = new JRocketServer(coreThreadPoolSize);
-            mServerSocket = new ServerSocket(port);
-            ClientReceiver clientReceiver = new ClientReceiver(mRocketServer, mServerSocket, mExecutorService);
+        return listen(port, coreThreadPoolSize, Engine.THREAD_POOL);
+    }
+
+    /**
+     * Starts listening on the port with the given engine.
+     *
+     * @param threads For {@link Engine#THREAD_POOL} the size of the thread pool, one client will require two threads. For {@link Engine#NIO} the number of
+     *                event loops, zero means one event loop per available processor. Ignored for {@link Engine#VIRTUAL_THREADS}.
+     */
+    public static JRocketServer listen(int port, int threads, Engine engine) throws IOException {
+        return listen(port, threads, engine, 1);
+    }
+
+    /**
+     * Starts a new server which listens on the port with the given engine. Every call returns an independent server with its own clients, listeners
+     * and threads, so one process can serve several ports.
+     *
+     * @param threads   See {@link #listen(int, int, Engine)}.
+     * @param acceptors Number of threads which accept connections and set up the clients. Where the platform supports {@code SO_REUSEPORT} each of
+     *                  them gets its own socket on the port and the kernel spreads the connections over them, otherwise they share one socket.
+     */
+    public static JRocketServer listen(int port, int threads, Engine engine, int acceptors) throws IOException {
+        return listen(port, threads, engine, acceptors, DEFAULT_BACKLOG);
+    }
+
+    /**
+     * Starts a new server which listens on the port with the given engine, see {@link #listen(int, int, Engine, int)}.
+     *
+     * @param backlog Number of connections the operating system queues until they are accepted, per socket. It's capped by the
+     *                system, e.g. {@code net.core.somaxconn} on Linux. The other {@code listen} methods use 1024.
+     */
+    public static JRocketServer listen(int port, int threads, Engine engine, int acceptors, int backlog) throws IOException {
+        JRocketServer rocketServer = new JRocketServer(threads, engine);
+        try {
+            rocketServer.bind(port, Math.max(acceptors, 1), backlog);
+        } catch (IOException e) {
+            rocketServer.shutdown();
+            throw e;
+        }
+        rocketServer.registerMetrics();
+        for (int i = 0; i < Math.max(acceptors, 1); i++) {
+            ServerSocket serverSocket = rocketServer.mServerSockets[i % rocketServer.mServerSockets.length];
+            ClientReceiver clientReceiver = new ClientReceiver(rocketServer, serverSocket);
+            clientReceiver.setName("JRocket-acceptor-" + serverSocket.getLocalPort() + "-" + i);
             clientReceiver.start();
         }
-        return mRocketServer;
+        return rocketServer;
+    }
+
+    /**
+     * Opens the sockets of the acceptors. Sockets after the first are bound to the port the first one got, so it works with port 0 as well.
+     */
+    private void bind(int port, int acceptors, int backlog) throws IOException {
+        ServerSocket first = openServerSocket(port, acceptors > 1, backlog);
+        mServerSocket = first;
+        if (acceptors == 1 || !Utils.isReusePort(first)) {
+            mServerSockets = new ServerSocket[]{first};
+            return;
+        }
+        mServerSockets = new ServerSocket[acceptors];
+        mServerSockets[0] = first;
+        for (int i = 1; i < acceptors; i++) {
+            mServerSockets[i] = openServerSocket(first.getLocalPort(), true, backlog);
+        }
+    }
+
+    private ServerSocket openServerSocket(int port) throws IOException {
+        return openServerSocket(port, false, DEFAULT_BACKLOG);
+    }
+
+    private ServerSocket openServerSocket(int port, boolean reusePort, int backlog) throws IOException {
+        ServerSocket serverSocket = mEngine == Engine.NIO ? ServerSocketChannel.open().socket() : new ServerSocket();
+        try {
+            if (reusePort) {
+                Utils.setReusePort(serverSocket);
+            }
+            serverSocket.bind(new InetSocketAddress(port), backlog);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        return serverSocket;
+    }
+
+    /**
+     * Makes the server a node of a cluster, which accepts the links of the other nodes on the port. Add the other nodes with
+     * {@link Cluster#addPeer(String, int)}. Every node needs its own id and the same secret, and has to use the same {@link PayloadCodec}.
+     * Clients which connect afterwards get ids which start with the node id, so they are unique in the cluster.
+     * <br>
+     * The secret is never sent, the nodes prove they know it with a challenge and response. The links aren't encrypted though, so the port
+     * should only be reachable from a trusted network.
+     */
+    public synchronized Cluster joinCluster(String nodeId, int port, String secret) throws IOException {
+        if (mCluster != null) {
+            throw new IllegalStateException("The server already joined a cluster");
+        }
+        ServerSocket serverSocket = openServerSocket(port);
+        Cluster cluster = new Cluster(this, nodeId, secret, serverSocket);
+        mCluster = cluster;
+        new ClientReceiver(this, serverSocket, true).start();
+        return cluster;
+    }
+
+    /**
+     * Returns the cluster the server joined, or null.
+     */
+    public Cluster getCluster() {
+        return mCluster;
     }
 
     /**
-     * Sets the size of core thread pool. One client will require two threads, so set this accordingly.
+     * Returns the engine the server is running on.
+     */
+    public Engine getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * Sets the size of core thread pool. One client will require two threads, so set this accordingly. Only used by {@link Engine#THREAD_POOL}.
      *
      * @param coreThreadPoolSize Should always be an even number. Odd numbers will be incremented and number less than 2 will be ignored and the core thread pool
      *                           size will be set to 2.
      */
     @Override
     public void setCoreThreadPoolSize(int coreThreadPoolSize) {
+        if (mEngine != Engine.THREAD_POOL) {
+            return;
+        }
         if (coreThreadPoolSize < 2) {
             coreThreadPoolSize = 2;
         }
@@ -66,13 +286,16 @@ public class JRocketServer implements JRocket {
     }
 
     /**
-     * Sets the max size of thread pool. One client will require two threads, so set this accordingly.
+     * Sets the max size of thread pool. One client will require two threads, so set this accordingly. Only used by {@link Engine#THREAD_POOL}.
      *
      * @param maxThreadPoolSize Should always be an even number. Odd numbers will be incremented and number less than 2 will be ignored and the max size of
      *                          thread pool will be set to 2.
      */
     @Override
     public void setMaxThreadPoolSize(int maxThreadPoolSize) {
+        if (mEngine != Engine.THREAD_POOL) {
+            return;
+        }
         if (maxThreadPoolSize < 2) {
             maxThreadPoolSize = 2;
         }
@@ -87,19 +310,62 @@ public class JRocketServer implements JRocket {
      * Stops the server and disconnects all of the clients
      */
     public void stop() throws IOException {
-        mServerSocket.close();
+        mStopping = true;
+        unregisterMetrics();
+        for (ServerSocket serverSocket : mServerSockets) {
+            serverSocket.close();
+        }
+        if (mCluster != null) {
+            mCluster.close();
+        }
+        for (Session session : mSessions.values()) {
+            if (session.end()) {
+                closeClient(session.getClient());
+            }
+        }
         disconnectClients();
+        shutdown();
+    }
+
+    /**
+     * Shuts down the threads of the server.
+     */
+    private void shutdown() {
+        if (mExecutorService != null) {
+            mExecutorService.shutdown();
+        }
+        mSetupExecutor.shutdown();
+        mFanoutPool.shutdown();
+        Runnable shutdownDispatch = new Runnable() {
+            @Override
+            public void run() {
+                for (ExecutorService executor : mOwnedDispatchExecutors) {
+                    executor.shutdown();
+                }
+            }
+        };
+        if (mEventLoopGroup != null) {
+            // The loops close their connections asynchronously, the disconnect listeners must still be dispatched
+            mEventLoopGroup.shutdown(shutdownDispatch);
+        } else {
+            shutdownDispatch.run();
+        }
     }
 
     /**
      * Disconnects a client
      */
     public void disconnect(Client client) {
+        Session session = client.getSession();
+        if (session != null && session.end()) {
+            closeClient(client);
+            return;
+        }
         client.disconnect();
     }
 
     private void disconnectClients() {
-        for (Client client : mClients) {
+        for (Client client : mClients.snapshot()) {
             client.disconnect();
         }
     }
@@ -108,23 +374,183 @@ public class JRocketServer implements JRocket {
      * Sets an onReceive listener
      */
     public void onReceive(String event, OnReceiveListener onReceiveListener) {
-        mEventLists.put(event, onReceiveListener);
+        onReceive(event, onReceiveListener, false);
+    }
+
+    /**
+     * Sets an onReceive listener
+     *
+     * @param inline If true, the listener is called directly on the thread which read the event instead of the dispatch executor. Only use it for
+     *               listeners which are very cheap and never block, a slow inline listener stalls the I/O of other clients.
+     */
+    public void onReceive(String event, final OnReceiveListener onReceiveListener, boolean inline) {
+        addEventHandler(event, new EventHandler(JSONObject.class, inline) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onReceiveListener.onReceive((JSONObject) data, client);
+            }
+        });
     }
 
     /**
-     * Sends an event with data
+     * Sets an onReceive listener which receives the data decoded into the type by the {@link PayloadCodec}
      */
-    public void send(String event, JSONObject data) {
-        for (Client client : mClients) {
-            client.send(event, data);
+    public <T> void onReceive(String event, Class<T> type, OnReceiveObjectListener<T> onReceiveListener) {
+        onReceive(event, type, onReceiveListener, false);
+    }
+
+    /**
+     * Sets an onReceive listener which receives the data decoded into the type by the {@link PayloadCodec}
+     *
+     * @param inline If true, the listener is called directly on the thread which read the event instead of the dispatch executor.
+     */
+    public <T> void onReceive(String event, final Class<T> type, final OnReceiveObjectListener<T> onReceiveListener, boolean inline) {
+        addEventHandler(event, new EventHandler(type, inline) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onReceiveListener.onReceive(type.cast(data), client);
+            }
+        });
+    }
+
+    /**
+     * Sets a listener for requests which clients send with {@link JRocketClient#request(String, JSONObject, long)}. The listener answers with the
+     * {@link Reply}, right away or later from any thread.
+     */
+    public void onRequest(String event, OnRequestListener onRequestListener) {
+        onRequest(event, onRequestListener, false);
+    }
+
+    /**
+     * Sets a listener for requests which clients send with {@link JRocketClient#request(String, JSONObject, long)}.
+     *
+     * @param inline If true, the listener is called directly on the thread which read the request instead of the dispatch executor.
+     */
+    public void onRequest(String event, final OnRequestListener onRequestListener, boolean inline) {
+        addEventHandler(event, new EventHandler(JSONObject.class, inline) {
+            @Override
+            void onReceive(Object data, Client client, Reply reply) {
+                onRequestListener.onRequest((JSONObject) data, client, reply);
+            }
+        });
+    }
+
+    /**
+     * Registers the handler and announces the id of a new event to the connected clients.
+     */
+    private void addEventHandler(String event, EventHandler handler) {
+        handler.setCounters(metrics.event(event));
+        int id = mEventLists.put(event, handler);
+        if (id >= 0 && !mClients.isEmpty()) {
+            mClients.send(EventTable.toFrame(event, id), null);
         }
     }
 
     /**
-     * Returns an ArrayList containing current clients
+     * Sets the executor which runs the listeners. Events of one client are always handled one at a time and in the order they arrived, events of
+     * different clients are handled in parallel. By default a cached thread pool is used for {@link Engine#THREAD_POOL}, a pool with one thread per
+     * processor for {@link Engine#NIO} and virtual threads for {@link Engine#VIRTUAL_THREADS}. Only applies to clients which connect afterwards.
+     */
+    public void setDispatchExecutor(Executor executor) {
+        // Clients which are connected already keep dispatching to the previous executor, so it's only shut down with the server
+        mDispatchExecutor = executor;
+    }
+
+    Executor getDispatchExecutor() {
+        return mDispatchExecutor;
+    }
+
+    /**
+     * Sends an event with data to every client. The event is encoded once on the calling thread and queued on the clients in parallel on a pool
+     * with one thread per processor, so the call returns right away. Clients get the events of successive broadcasts in the order they were sent,
+     * but an event which is sent directly to a client may overtake a broadcast which is still being queued. Wait for the future to rule that out.
+     * In a {@link Cluster} the event is also relayed to the other nodes, which send it to their clients.
+     *
+     * @return Completes with the number of clients of this server the event was queued on.
+     */
+    public CompletableFuture<Integer> send(String event, JSONObject data) {
+        return send(event, (Object) data);
+    }
+
+    /**
+     * Sends an event with data, which is converted by the {@link PayloadCodec}, to every client. See {@link #send(String, JSONObject)}.
+     *
+     * @return Completes with the number of clients the event was queued on.
+     */
+    public CompletableFuture<Integer> send(String event, Object data) {
+        return publish(null, event, data, null);
+    }
+
+    /**
+     * Returns the room with the name. The room can be kept, it always reaches the clients which are in the room at the time of sending.
+     * Sending to a room which has no clients does nothing.
+     */
+    public Room to(String room) {
+        return new Room(room, this);
+    }
+
+    /**
+     * Returns the names of the rooms which have at least one client
+     */
+    public Set<String> rooms() {
+        return new HashSet<>(mRooms.keySet());
+    }
+
+    /**
+     * Adds the client to the room, creating the room if needed.
+     */
+    void join(final Client client, String room) {
+        mRooms.compute(room, new BiFunction<String, ClientRegistry, ClientRegistry>() {
+            @Override
+            public ClientRegistry apply(String name, ClientRegistry clients) {
+                if (clients == null) {
+                    clients = new ClientRegistry();
+                }
+                clients.add(client);
+                return clients;
+            }
+        });
+    }
+
+    /**
+     * Removes the client from the room. The room is removed once it's empty.
+     */
+    void leave(final Client client, String room) {
+        mRooms.computeIfPresent(room, new BiFunction<String, ClientRegistry, ClientRegistry>() {
+            @Override
+            public ClientRegistry apply(String name, ClientRegistry clients) {
+                clients.remove(client);
+                return clients.isEmpty() ? null : clients;
+            }
+        });
+    }
+
+    /**
+     * Returns the clients of the room, or null if it has none.
+     */
+    ClientRegistry members(String room) {
+        return mRooms.get(room);
+    }
+
+    /**
+     * Returns an ArrayList containing current clients. The list is a copy, it doesn't change when clients connect or disconnect.
      */
     public ArrayList<Client> clients() {
-        return mClients;
+        return new ArrayList<>(Arrays.asList(mClients.snapshot()));
+    }
+
+    /**
+     * Returns the client with the id, or null if no such client is connected
+     */
+    public Client getClient(String id) {
+        return mClients.get(id);
+    }
+
+    /**
+     * Returns the number of connected clients
+     */
+    public int getClientCount() {
+        return mClients.size();
     }
 
 
@@ -132,41 +558,366 @@ public class JRocketServer implements JRocket {
      * This method broadcasts to all client except the client from whom the event was fired
      */
 
-    void broadCast(String event, JSONObject data, Client client) {
-        for (Client c : mClients) {
-            if (!c.equals(client)) {
-                c.send(event, data);
+    CompletableFuture<Integer> broadCast(String event, Object data, Client client) {
+        return publish(null, event, data, client);
+    }
+
+    /**
+     * Relays the event to the other nodes of the cluster, if any, and sends it to the local clients.
+     *
+     * @param room   Name of the room the clients belong to, or null for all clients. Its clients are looked up after relaying.
+     * @param except Client which is skipped, or null.
+     */
+    CompletableFuture<Integer> publish(String room, String event, Object data, Client except) {
+        Cluster cluster = mCluster;
+        if (cluster != null) {
+            try {
+                data = cluster.relay(room, event, data);
+            } catch (IOException e) {
+                CompletableFuture<Integer> future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+                return future;
             }
         }
+        ClientRegistry clients = room != null ? mRooms.get(room) : mClients;
+        if (clients == null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return broadCast(clients, event, data, except);
     }
 
     /**
-     * This method calls the specific event which was fired from the client
+     * Sends an event which another node relayed to the local clients of the room, or to all of them if the room is null.
      */
+    void fanOut(String room, String event, Payload payload) {
+        if (room == null) {
+            broadCast(mClients, event, payload, null);
+            return;
+        }
+        ClientRegistry clients = mRooms.get(room);
+        if (clients != null) {
+            broadCast(clients, event, payload, null);
+        }
+    }
 
-    void onReceiveEvent(String event, JSONObject data, Client client) {
-        if (mEventLists.containsKey(event)) {
-            mEventLists.get(event).onReceive(data, client);
+    /**
+     * Encodes the event and queues it on the clients off the calling thread, see {@link Fanout}.
+     *
+     * @param except Client which is skipped, or null.
+     */
+    private CompletableFuture<Integer> broadCast(ClientRegistry clients, String event, Object data, Client except) {
+        if (clients.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
         }
+        Frame frame;
+        try {
+            frame = FrameCodec.encode(event, data, this);
+        } catch (IOException e) {
+            CompletableFuture<Integer> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return mFanout.send(clients, frame, except);
+    }
+
+    /**
+     * Encodes the event once, so the same frame can be queued on every client.
+     */
+    Frame encode(String event, Object data) {
+        try {
+            return FrameCodec.encode(event, data, this);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * This method calls the specific event which was fired from the client. Events without a listener are dropped before
+     * their payload is decoded.
+     */
+
+    void onReceiveEvent(String event, ByteBuffer payload, boolean compressed, Client client, Reply reply) throws IOException {
+        onReceiveEvent(eventTable(client).get(event), payload, compressed, client, reply);
+    }
+
+    /**
+     * This method calls the event which was fired from the client with the id the server announced for it.
+     */
+
+    void onReceiveEvent(int eventId, ByteBuffer payload, boolean compressed, Client client, Reply reply) throws IOException {
+        onReceiveEvent(eventTable(client).get(eventId), payload, compressed, client, reply);
+    }
+
+    /**
+     * The events of other nodes are handled by the cluster.
+     */
+    private EventTable eventTable(Client client) {
+        return client.isPeer() ? mCluster.getEventTable() : mEventLists;
+    }
+
+    private void onReceiveEvent(final EventHandler handler, ByteBuffer payload, boolean compressed, final Client client, Reply request)
+            throws IOException {
+        if (!client.isStarted() && handler != mHelloHandler && client.start()) {
+            client.dispatch(announce(client));
+        }
+        if (handler == null) {
+            metrics.onEventDropped();
+            return;
+        }
+        final long received = System.nanoTime();
+        handler.getCounters().onReceived(payload.remaining());
+        if (compressed) {
+            payload = Compression.inflate(payload, compressionDictionary, compressionStats);
+        }
+        final Object data = handler.decode(payload, payloadCodec);
+        metrics.onDecoded(System.nanoTime() - received);
+        // Listeners for requests leave events which aren't requests unanswered
+        final Reply reply = request != null ? request : Reply.NONE;
+        if (handler.isInline()) {
+            handler.onReceive(data, client, reply);
+            return;
+        }
+        client.dispatch(new Runnable() {
+            @Override
+            public void run() {
+                long latency = System.nanoTime() - received;
+                metrics.onDispatched(latency);
+                client.onDispatched(latency);
+                handler.onReceive(data, client, reply);
+            }
+        });
+    }
+
+    /**
+     * Checks the socket which was just accepted against the limits, before anything is allocated for it.
+     *
+     * @return False if the socket has to be closed.
+     */
+    boolean admit(Socket socket) {
+        AdmissionControl.Rejection rejection = mAdmission.admit(socket.getInetAddress(), mClients.size() + mSettingUp.get());
+        if (rejection != null) {
+            metrics.onRejected(rejection);
+            return false;
+        }
+        mSettingUp.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Creates the client of the admitted socket on the setup executor, so the acceptor can accept the next socket meanwhile.
+     *
+     * @param accepted When the socket was accepted, in {@link System#nanoTime()}.
+     */
+    void setUp(final Socket socket, final long accepted) {
+        try {
+            mSetupExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    metrics.onAcceptQueued(System.nanoTime() - accepted);
+                    try {
+                        onConnect(createClient(socket, false));
+                        metrics.onAccepted(System.nanoTime() - accepted);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        abandon(socket);
+                    } finally {
+                        mSettingUp.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            mSettingUp.decrementAndGet();
+            abandon(socket);
+        }
+    }
+
+    /**
+     * Closes an admitted socket which never became a client.
+     */
+    private void abandon(Socket socket) {
+        mAdmission.release(socket.getInetAddress());
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates a client for the socket which was just accepted.
+     */
+
+    Client createClient(Socket socket, boolean peer) throws IOException {
+        if (mEngine == Engine.NIO) {
+            return Client.createClient(createID(), this, socket.getChannel(), mEventLoopGroup.next(), peer);
+        }
+        return Client.createClient(createID(), this, socket, mExecutorService, peer);
+    }
+
+    private String createID() {
+        Cluster cluster = mCluster;
+        return cluster != null ? cluster.getNodeId() + "-" + Utils.createID() : Utils.createID();
     }
 
     /**
      * This method is called when a client connects.
      */
 
-    void onConnect(Client client) {
-        if (mOnClientConnectListener != null)
-            mOnClientConnectListener.onClientConnect(client);
-        addClient(client);
+    void onConnect(final Client client) {
+        if (!mEventLists.isEmpty()) {
+            client.send(mEventLists.toFrame());
+        }
+        if (sessionTimeout <= 0) {
+            if (client.start()) {
+                announce(client).run();
+            }
+            return;
+        }
+        // The client is announced once it said hello, so a client which resumes its session is never seen as a new one
+        HashedWheelTimer.shared().newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                if (client.start()) {
+                    client.dispatch(announce(client));
+                }
+            }
+        }, HELLO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the task which tells the listener about the client and adds it to the server.
+     */
+    private Runnable announce(final Client client) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (mOnClientConnectListener != null)
+                    mOnClientConnectListener.onClientConnect(client);
+                addClient(client);
+            }
+        };
+    }
+
+    /**
+     * Called with the first request of every {@link JRocketClient}. A client with the token of a session which is kept resumes it, any other
+     * client starts a new session if sessions are enabled. The response tells the client which one happened.
+     */
+    private void onHello(JSONObject data, Client client, Reply reply) {
+        try {
+            if (!client.start()) {
+                Session session = client.getSession();
+                JSONObject response = new JSONObject().put("id", client.getId());
+                reply.send(session != null ? response.put("token", session.getToken()) : response);
+                return;
+            }
+            if (sessionTimeout <= 0) {
+                reply.send(new JSONObject().put("id", client.getId()));
+                client.dispatch(announce(client));
+                return;
+            }
+            Session session = mSessions.get(data.optString("token"));
+            if (session != null) {
+                Client owner = session.getClient();
+                JSONObject response = new JSONObject().put("id", owner.getId()).put("resumed", true);
+                switch (session.resume(client, data.optLong("received", -1), reply, response)) {
+                    case RESUMED:
+                        return;
+                    case RETRY:
+                        owner.getConnection().close(DisconnectReason.SUPERSEDED);
+                        reply.send(new JSONObject().put("retry", true));
+                        return;
+                    case FAILED:
+                        if (session.end()) {
+                            closeClient(owner);
+                        }
+                        break;
+                }
+            }
+            session = new Session(client, replayBufferSize);
+            client.setSession(session);
+            mSessions.put(session.getToken(), session);
+            reply.send(new JSONObject().put("id", client.getId()).put("token", session.getToken()));
+            client.dispatch(announce(client));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This method is called when another node of the cluster links to this server.
+     */
+
+    void onPeerConnect(Client client) {
+        client.start();
+        mCluster.onPeerConnect(client);
     }
 
     /**
-     * This method is called when a client disconnects.
+     * This method is called when a connection of a client closes. If the client has a session, it's kept for the client to resume unless the
+     * connection was closed on purpose.
+     *
+     * @param address Address the connection came from.
      */
 
-    void onDisconnect(Client client) {
-        if (mOnClientDisconnectListener != null && removeClient(client))
-            mOnClientDisconnectListener.onClientDisconnect(client);
+    void onDisconnect(final Client client, Connection connection, InetAddress address) {
+        if (client.isPeer()) {
+            mCluster.onPeerDisconnect(client);
+            return;
+        }
+        mAdmission.release(address);
+        if (client.start() || client.getConnection() != connection) {
+            // Never announced, or the connection was replaced by the one the client resumed its session on
+            return;
+        }
+        final Session session = client.getSession();
+        if (session != null && !mStopping && isResumable(connection.getDisconnectReason())) {
+            boolean parked = session.park(new Runnable() {
+                @Override
+                public void run() {
+                    if (session.end()) {
+                        closeClient(client);
+                    }
+                }
+            }, sessionTimeout);
+            if (parked) {
+                return;
+            }
+        }
+        closeClient(client);
+    }
+
+    /**
+     * Whether the connection was lost rather than closed on purpose, so the client may resume its session.
+     */
+    private static boolean isResumable(DisconnectReason reason) {
+        return reason == DisconnectReason.PEER_CLOSED || reason == DisconnectReason.IO_ERROR || reason == DisconnectReason.HEARTBEAT_TIMEOUT
+                || reason == DisconnectReason.SUPERSEDED;
+    }
+
+    /**
+     * Removes the client for good and tells the listener.
+     */
+    private void closeClient(final Client client) {
+        Session session = client.getSession();
+        if (session != null) {
+            mSessions.remove(session.getToken(), session);
+        }
+        if (removeClient(client)) {
+            client.leaveAll();
+            Cluster cluster = mCluster;
+            if (cluster != null) {
+                cluster.onClientDisconnect(client);
+            }
+            if (mOnClientDisconnectListener != null) {
+                client.dispatch(new Runnable() {
+                    @Override
+                    public void run() {
+                        mOnClientDisconnectListener.onClientDisconnect(client);
+                    }
+                });
+            }
+        }
     }
 
 
@@ -175,7 +926,7 @@ public class JRocketServer implements JRocket {
      */
 
     void onServerStop() {
-        if (mOnServerStopListener != null) {
+        if (mOnServerStopListener != null && mStopNotified.compareAndSet(false, true)) {
             mOnServerStopListener.onServerStop();
         }
     }
@@ -199,6 +950,10 @@ public class JRocketServer implements JRocket {
 
     private void addClient(Client client) {
         mClients.add(client);
+        Cluster cluster = mCluster;
+        if (cluster != null) {
+            cluster.onClientConnect(client);
+        }
     }
 
     /**
@@ -208,6 +963,49 @@ public class JRocketServer implements JRocket {
         return mClients.remove(client);
     }
 
+    /**
+     * Get the maximum number of clients
+     */
+    public int getMaxConnections() {
+        return mAdmission.getMaxConnections();
+    }
+
+    /**
+     * Set the maximum number of clients. Sockets which are accepted beyond it are closed right away. Zero means no limit, which is the default.
+     */
+    public void setMaxConnections(int maxConnections) {
+        mAdmission.setMaxConnections(maxConnections);
+    }
+
+    /**
+     * Get the maximum number of connections which are accepted per second
+     */
+    public int getMaxAcceptRate() {
+        return mAdmission.getMaxAcceptRate();
+    }
+
+    /**
+     * Set the maximum number of connections which are accepted per second, e.g. to spread a reconnect storm after a restart. Bursts of up to a
+     * second worth of connections are let through, sockets beyond the rate are closed right away. Zero means no limit, which is the default.
+     */
+    public void setMaxAcceptRate(int connectionsPerSecond) {
+        mAdmission.setMaxAcceptRate(connectionsPerSecond);
+    }
+
+    /**
+     * Get the maximum number of clients which may connect from the same address
+     */
+    public int getMaxConnectionsPerAddress() {
+        return mAdmission.getMaxConnectionsPerAddress();
+    }
+
+    /**
+     * Set the maximum number of clients which may connect from the same address. Zero means no limit, which is the default.
+     */
+    public void setMaxConnectionsPerAddress(int maxConnections) {
+        mAdmission.setMaxConnectionsPerAddress(maxConnections);
+    }
+
     /**
      * Get the heartbeat rate in milliseconds
      */
@@ -216,12 +1014,240 @@ public class JRocketServer implements JRocket {
     }
 
     /**
-     * Set the heartbeat rate in milliseconds. Server will send a heartbeat to the client in n milliseconds
+     * Set the heartbeat rate in milliseconds. Server will send a ping to every client every n milliseconds, which measures the round trip time, and
+     * disconnects the client if nothing was received from it for 3 * n milliseconds. Zero disables heartbeats. Only applies to clients which connect afterwards.
      */
     public void setHeartBeatRate(int milliseconds) {
         this.heartBeatRate = milliseconds;
     }
 
+    /**
+     * Get the time in milliseconds a session is kept after its connection was lost
+     */
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Enables sessions. When the connection of a client is lost, its {@link Client} is kept for this many milliseconds with its id, data and rooms.
+     * A {@link JRocketClient} which reconnects meanwhile resumes the session and gets the events it missed, so neither side sees it as a new client.
+     * The disconnect listener is called once the session times out or the client disconnects on purpose. Zero disables sessions, which is the default.
+     * Only applies to clients which connect afterwards.
+     */
+    public void setSessionTimeout(int milliseconds) {
+        this.sessionTimeout = milliseconds;
+    }
+
+    /**
+     * Get the number of events which are kept per session for replay
+     */
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    /**
+     * Set the number of recent events which are kept per session and replayed if the client missed them, and the number of events which are held for
+     * the client while it's away. A client which missed more than that gets a new session instead. The default is 256. Requests and responses are
+     * never replayed.
+     */
+    public void setReplayBufferSize(int events) {
+        this.replayBufferSize = events;
+    }
+
+    /**
+     * Get the maximum number of bytes which are written to the socket at once
+     */
+    @Override
+    public int getMaxWriteBatchSize() {
+        return maxWriteBatchSize;
+    }
+
+    /**
+     * Set the maximum number of bytes which are written to the socket at once. Events which are queued while the server is writing are collected and
+     * written together with a single flush, up to this many bytes. Set it to 1 to write and flush every event on its own.
+     */
+    @Override
+    public void setMaxWriteBatchSize(int bytes) {
+        this.maxWriteBatchSize = bytes;
+    }
+
+    /**
+     * Get the maximum time in milliseconds an event waits for more events before it's written
+     */
+    @Override
+    public int getMaxWriteDelay() {
+        return maxWriteDelay;
+    }
+
+    /**
+     * Set the maximum time in milliseconds an event waits for more events before it's written, so that more of them fit in one write. The default is 0,
+     * which writes whatever is queued immediately and is best for latency-sensitive applications.
+     */
+    @Override
+    public void setMaxWriteDelay(int milliseconds) {
+        this.maxWriteDelay = milliseconds;
+    }
+
+    /**
+     * Returns true if small writes are sent right away instead of being delayed by Nagle's algorithm
+     */
+    @Override
+    public boolean getTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Set whether TCP_NODELAY is enabled on the sockets of new connections. It's on by default: events are already batched by
+     * {@link #setMaxWriteBatchSize(int)} and {@link #setMaxWriteDelay(int)}, and Nagle's algorithm would hold back small events, pings and
+     * pongs until the previous write is acknowledged, which adds up to tens of milliseconds to every round trip.
+     */
+    @Override
+    public void setTcpNoDelay(boolean on) {
+        this.tcpNoDelay = on;
+    }
+
+    /**
+     * Get the maximum number of events which can be queued for a client
+     */
+    @Override
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * Set the maximum number of events which can be queued for a client before the overflow policy applies. Zero means no limit, which is the default.
+     * Only applies to connections which are made afterwards.
+     */
+    @Override
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    /**
+     * Get the maximum number of bytes which can be queued for a client
+     */
+    @Override
+    public long getMaxQueueBytes() {
+        return maxQueueBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes which can be queued for a client before the overflow policy applies. Zero means no limit, which is the default.
+     * Only applies to connections which are made afterwards.
+     */
+    @Override
+    public void setMaxQueueBytes(long maxQueueBytes) {
+        this.maxQueueBytes = maxQueueBytes;
+    }
+
+    /**
+     * Get the policy which applies when the queue of a client is full
+     */
+    @Override
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Set the policy which applies when the queue of a client is full. The default is {@link OverflowPolicy#BLOCK}. Only applies to connections which
+     * are made afterwards.
+     */
+    @Override
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Get the codec which converts the data of events to bytes and back
+     */
+    @Override
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * Set the codec which converts the data of events to bytes and back. The default is {@link JsonPayloadCodec}. Clients have to use the same codec.
+     */
+    @Override
+    public void setPayloadCodec(PayloadCodec payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    /**
+     * Get the minimum size in bytes of payloads which are compressed
+     */
+    @Override
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the minimum size in bytes of payloads which are compressed with deflate. Smaller payloads, and payloads which don't get smaller, are sent as they
+     * are. Zero disables compression, which is the default. Clients can read compressed payloads whatever their own threshold is.
+     */
+    @Override
+    public void setCompressionThreshold(int bytes) {
+        this.compressionThreshold = bytes;
+    }
+
+    /**
+     * Get the preset dictionary which is used for compression
+     */
+    @Override
+    public byte[] getCompressionDictionary() {
+        return compressionDictionary;
+    }
+
+    /**
+     * Set a preset dictionary for compression, e.g. a typical payload. It makes small payloads compress much better. Clients has to set the same
+     * dictionary, payloads which were compressed with another dictionary are rejected and close the connection.
+     */
+    @Override
+    public void setCompressionDictionary(byte[] dictionary) {
+        this.compressionDictionary = dictionary;
+    }
+
+    /**
+     * Returns the statistics of compression, e.g. to tune the compression threshold
+     */
+    @Override
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /**
+     * Returns the metrics of the server. They are also registered with the platform MBean server as
+     * {@code xyz.farhanfarooqui.JRocket:type=JRocketServer,port=<port>} while the server is listening.
+     */
+    @Override
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    private ObjectName metricsName() throws MalformedObjectNameException {
+        return new ObjectName("xyz.farhanfarooqui.JRocket:type=JRocketServer,port=" + mServerSocket.getLocalPort());
+    }
+
+    private void registerMetrics() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, metricsName());
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void unregisterMetrics() {
+        try {
+            ObjectName name = metricsName();
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public InetAddress getInetAddress() {
         return mServerSocket.getInetAddress();
@@ -237,7 +1263,9 @@ public class JRocketServer implements JRocket {
      * t must be > 0. A timeout of zero is interpreted as an infinite timeout.
      */
     public void setClientReceiveTimeout(int t) throws SocketException {
-        mServerSocket.setSoTimeout(t);
+        for (ServerSocket serverSocket : mServerSockets) {
+            serverSocket.setSoTimeout(t);
+        }
     }
 
     @Override
@@ -0,0 +1,57 @@
+package xyz.farhanfarooqui.JRocket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes payloads as UTF-8 JSON text. {@link JSONObject}s are written as they are, other objects are converted by a
+ * single {@link Gson} instance which is reused for every payload. This is the default codec.
+ */
+public class JsonPayloadCodec implements PayloadCodec {
+    private final Gson mGson;
+
+    public JsonPayloadCodec() {
+        this(new Gson());
+    }
+
+    /**
+     * @param gson The Gson instance which converts objects, e.g. one with custom type adapters.
+     */
+    public JsonPayloadCodec(Gson gson) {
+        mGson = gson;
+    }
+
+    @Override
+    public byte[] encode(Object data) throws IOException {
+        String json;
+        if (data instanceof JSONObject) {
+            json = data.toString();
+        } else {
+            try {
+                json = mGson.toJson(data);
+            } catch (JsonParseException e) {
+                throw new IOException(e);
+            }
+        }
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <T> T decode(ByteBuffer payload, Class<T> type) throws IOException {
+        String json = StandardCharsets.UTF_8.decode(payload).toString();
+        try {
+            if (type == JSONObject.class) {
+                return type.cast(new JSONObject(json));
+            }
+            return mGson.fromJson(json, type);
+        } catch (JSONException | JsonParseException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds. Every power of two is split into 32 buckets, so percentiles are
+ * accurate to about 3% from nanoseconds up to hours.
+ * <br>
+ * Threads record into their own stripe, so they don't contend on the same counters. The buckets of a power of two are
+ * only allocated once a value falls into it, which keeps histograms small enough to have one per client.
+ */
+
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int CHUNKS = 64;
+    private static final int STRIPES = stripes();
+
+    private final AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>> mStripes = new AtomicReferenceArray<>(STRIPES);
+    private final LongAdder mSum = new LongAdder();
+
+    private static int stripes() {
+        int processors = Math.min(Runtime.getRuntime().availableProcessors(), 16);
+        return processors <= 1 ? 1 : Integer.highestOneBit(processors - 1) << 1;
+    }
+
+    /**
+     * Records a latency. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        int index = index(nanos);
+        chunk(stripe(), index >> SUB_BUCKET_BITS).incrementAndGet(index & (SUB_BUCKETS - 1));
+        mSum.add(nanos);
+    }
+
+    /**
+     * Moves every recorded value into the other histogram, e.g. to keep a total while reporting intervals.
+     */
+    public void drainTo(LatencyHistogram other) {
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicReferenceArray<AtomicLongArray> chunks = mStripes.get(s);
+            if (chunks == null) {
+                continue;
+            }
+            for (int c = 0; c < CHUNKS; c++) {
+                AtomicLongArray counts = chunks.get(c);
+                if (counts == null) {
+                    continue;
+                }
+                for (int i = 0; i < SUB_BUCKETS; i++) {
+                    long count = counts.getAndSet(i, 0);
+                    if (count != 0) {
+                        other.chunk(0, c).addAndGet(i, count);
+                    }
+                }
+            }
+        }
+        other.mSum.add(mSum.sumThenReset());
+    }
+
+    /**
+     * Number of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (long c : merge()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the count, mean and percentiles of the recorded values.
+     */
+    public HistogramSnapshot snapshot() {
+        long[] counts = merge();
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        long max = 0;
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                max = value(i);
+                break;
+            }
+        }
+        return new HistogramSnapshot(count, count == 0 ? 0 : (double) mSum.sum() / count, percentile(counts, count, 0.5),
+                percentile(counts, count, 0.9), percentile(counts, count, 0.99), percentile(counts, count, 0.999), max);
+    }
+
+    private static long percentile(long[] counts, long count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return value(i);
+            }
+        }
+        return value(counts.length - 1);
+    }
+
+    /**
+     * Adds up the counts of every stripe.
+     */
+    private long[] merge() {
+        long[] merged = new long[CHUNKS * SUB_BUCKETS];
+        for (int s = 0; s < STRIPES; s++) {
+            AtomicReferenceArray<AtomicLongArray> chunks = mStripes.get(s);
+            if (chunks == null) {
+                continue;
+            }
+            for (int c = 0; c < CHUNKS; c++) {
+                AtomicLongArray counts = chunks.get(c);
+                if (counts == null) {
+                    continue;
+                }
+                for (int i = 0; i < SUB_BUCKETS; i++) {
+                    merged[(c << SUB_BUCKET_BITS) + i] += counts.get(i);
+                }
+            }
+        }
+        return merged;
+    }
+
+    private static int stripe() {
+        if (STRIPES == 1) {
+            return 0;
+        }
+        return (int) Thread.currentThread().getId() & (STRIPES - 1);
+    }
+
+    private AtomicLongArray chunk(int stripe, int chunk) {
+        AtomicReferenceArray<AtomicLongArray> chunks = mStripes.get(stripe);
+        if (chunks == null) {
+            mStripes.compareAndSet(stripe, null, new AtomicReferenceArray<AtomicLongArray>(CHUNKS));
+            chunks = mStripes.get(stripe);
+        }
+        AtomicLongArray counts = chunks.get(chunk);
+        if (counts == null) {
+            chunks.compareAndSet(chunk, null, new AtomicLongArray(SUB_BUCKETS));
+            counts = chunks.get(chunk);
+        }
+        return counts;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    /**
+     * The upper bound of the bucket, so percentiles are never reported lower than they were.
+     */
+    private static long value(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index >> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = index & (SUB_BUCKETS - 1);
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
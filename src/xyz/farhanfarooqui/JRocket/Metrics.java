@@ -0,0 +1,333 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of a {@link JRocketServer} or a {@link JRocketClient}. Get them with
+ * {@link JRocketServer#getMetrics()} and {@link JRocketClient#getMetrics()}. Every getter reads the current value, call
+ * {@link #snapshot()} to read all of them at once. Recording only adds to striped counters, so it's cheap enough to be
+ * always on.
+ * <br>
+ * Messages are events, requests and responses. Heartbeats and event id announcements are only counted in bytes.
+ */
+
+public final class Metrics implements MetricsMXBean {
+    private final ConnectionSource mConnectionSource;
+    private final LongAdder mMessagesReceived = new LongAdder();
+    private final LongAdder mBytesReceived = new LongAdder();
+    private final LongAdder mMessagesSent = new LongAdder();
+    private final LongAdder mBytesSent = new LongAdder();
+    private final LongAdder mEventsDropped = new LongAdder();
+    private final LongAdder mConnectionsAccepted = new LongAdder();
+    private final LongAdder[] mDisconnects = new LongAdder[DisconnectReason.values().length];
+    private final LongAdder[] mRejections = new LongAdder[AdmissionControl.Rejection.values().length];
+    private final ConcurrentHashMap<String, EventCounters> mEvents = new ConcurrentHashMap<>();
+    private final LatencyHistogram mEncodeTime = new LatencyHistogram();
+    private final LatencyHistogram mDecodeTime = new LatencyHistogram();
+    private final LatencyHistogram mDispatchLatency = new LatencyHistogram();
+    private final LatencyHistogram mAcceptTime = new LatencyHistogram();
+    private final LatencyHistogram mAcceptQueueTime = new LatencyHistogram();
+    private final LatencyHistogram mRoundTripTime = new LatencyHistogram();
+
+    /**
+     * @param connectionSource The open connections, which are read for the queue gauges.
+     */
+    Metrics(ConnectionSource connectionSource) {
+        mConnectionSource = connectionSource;
+        for (int i = 0; i < mDisconnects.length; i++) {
+            mDisconnects[i] = new LongAdder();
+        }
+        for (int i = 0; i < mRejections.length; i++) {
+            mRejections[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Returns the counters of the event, creating them when the event is seen for the first time.
+     */
+    EventCounters event(String event) {
+        EventCounters counters = mEvents.get(event);
+        if (counters == null) {
+            EventCounters newCounters = new EventCounters();
+            counters = mEvents.putIfAbsent(event, newCounters);
+            if (counters == null) {
+                counters = newCounters;
+            }
+        }
+        return counters;
+    }
+
+    void onFrameReceived(int bytes, boolean message) {
+        mBytesReceived.add(bytes);
+        if (message) {
+            mMessagesReceived.increment();
+        }
+    }
+
+    /**
+     * Called by the writer of a connection for every frame it writes.
+     */
+    void onFrameSent(Frame frame, boolean message) {
+        mBytesSent.add(frame.length());
+        if (message) {
+            mMessagesSent.increment();
+            EventCounters counters = frame.mEventCounters;
+            if (counters == null && frame.getEvent() != null) {
+                counters = event(frame.getEvent());
+                frame.mEventCounters = counters;
+            }
+            if (counters != null) {
+                counters.onSent(frame.payloadLength());
+            }
+        }
+    }
+
+    /**
+     * Called for an event which was received, but has no listener.
+     */
+    void onEventDropped() {
+        mEventsDropped.increment();
+    }
+
+    void onEncoded(long nanos) {
+        mEncodeTime.record(nanos);
+    }
+
+    void onDecoded(long nanos) {
+        mDecodeTime.record(nanos);
+    }
+
+    /**
+     * @param nanos Time from reading the event until its listener was called.
+     */
+    void onDispatched(long nanos) {
+        mDispatchLatency.record(nanos);
+    }
+
+    /**
+     * @param nanos Time from accepting the socket until the client was connected.
+     */
+    void onAccepted(long nanos) {
+        mConnectionsAccepted.increment();
+        mAcceptTime.record(nanos);
+    }
+
+    /**
+     * @param nanos Time from accepting the socket until its client was being set up.
+     */
+    void onAcceptQueued(long nanos) {
+        mAcceptQueueTime.record(nanos);
+    }
+
+    void onRejected(AdmissionControl.Rejection rejection) {
+        mRejections[rejection.ordinal()].increment();
+    }
+
+    /**
+     * @param nanos Round trip time of a ping.
+     */
+    void onRoundTrip(long nanos) {
+        mRoundTripTime.record(nanos);
+    }
+
+    void onDisconnect(DisconnectReason reason) {
+        mDisconnects[reason.ordinal()].increment();
+    }
+
+    /**
+     * Reads every metric at once.
+     */
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(this);
+    }
+
+    /**
+     * Number of messages which were received.
+     */
+    @Override
+    public long getMessagesReceived() {
+        return mMessagesReceived.sum();
+    }
+
+    /**
+     * Number of bytes which were received, including the headers of frames.
+     */
+    @Override
+    public long getBytesReceived() {
+        return mBytesReceived.sum();
+    }
+
+    /**
+     * Number of messages which were written to connections. A broadcast counts once for every client it was written to.
+     */
+    @Override
+    public long getMessagesSent() {
+        return mMessagesSent.sum();
+    }
+
+    /**
+     * Number of bytes which were written to connections, including the headers of frames.
+     */
+    @Override
+    public long getBytesSent() {
+        return mBytesSent.sum();
+    }
+
+    /**
+     * Number of received events which were dropped because nothing listens to them.
+     */
+    @Override
+    public long getEventsDropped() {
+        return mEventsDropped.sum();
+    }
+
+    /**
+     * Number of connections the server accepted. Always zero on a client.
+     */
+    @Override
+    public long getConnectionsAccepted() {
+        return mConnectionsAccepted.sum();
+    }
+
+    /**
+     * Number of connections the server closed right after accepting them, because they exceeded a limit, by the name of the limit:
+     * {@code MAX_CONNECTIONS}, {@code ACCEPT_RATE} or {@code CONNECTIONS_PER_ADDRESS}.
+     */
+    @Override
+    public Map<String, Long> getConnectionsRejected() {
+        Map<String, Long> rejections = new LinkedHashMap<>();
+        for (AdmissionControl.Rejection rejection : AdmissionControl.Rejection.values()) {
+            rejections.put(rejection.name(), mRejections[rejection.ordinal()].sum());
+        }
+        return Collections.unmodifiableMap(rejections);
+    }
+
+    /**
+     * Number of open connections.
+     */
+    @Override
+    public int getConnections() {
+        return mConnectionSource.getConnections().length;
+    }
+
+    /**
+     * Number of frames which are waiting to be written, over all connections.
+     */
+    @Override
+    public long getQueuedFrames() {
+        long frames = 0;
+        for (Connection connection : mConnectionSource.getConnections()) {
+            frames += connection.mQueue.size();
+        }
+        return frames;
+    }
+
+    /**
+     * Number of frames which are waiting to be written on the connection with the longest queue.
+     */
+    @Override
+    public int getMaxQueuedFrames() {
+        int max = 0;
+        for (Connection connection : mConnectionSource.getConnections()) {
+            max = Math.max(max, connection.mQueue.size());
+        }
+        return max;
+    }
+
+    /**
+     * Number of bytes which are waiting to be written, over all connections.
+     */
+    @Override
+    public long getQueuedBytes() {
+        long bytes = 0;
+        for (Connection connection : mConnectionSource.getConnections()) {
+            bytes += connection.mQueue.bytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of closed connections by the name of their {@link DisconnectReason}.
+     */
+    @Override
+    public Map<String, Long> getDisconnects() {
+        Map<String, Long> disconnects = new LinkedHashMap<>();
+        for (DisconnectReason reason : DisconnectReason.values()) {
+            disconnects.put(reason.name(), mDisconnects[reason.ordinal()].sum());
+        }
+        return Collections.unmodifiableMap(disconnects);
+    }
+
+    /**
+     * Counters of every event which was received with a listener or was sent, by the name of the event.
+     */
+    @Override
+    public Map<String, EventMetrics> getEvents() {
+        Map<String, EventMetrics> events = new TreeMap<>();
+        for (Map.Entry<String, EventCounters> entry : mEvents.entrySet()) {
+            events.put(entry.getKey(), entry.getValue().toEventMetrics());
+        }
+        return Collections.unmodifiableMap(events);
+    }
+
+    /**
+     * Time the {@link PayloadCodec} took to encode payloads.
+     */
+    @Override
+    public HistogramSnapshot getEncodeTime() {
+        return mEncodeTime.snapshot();
+    }
+
+    /**
+     * Time the {@link PayloadCodec} took to decode payloads.
+     */
+    @Override
+    public HistogramSnapshot getDecodeTime() {
+        return mDecodeTime.snapshot();
+    }
+
+    /**
+     * Time from reading an event until its listener was called, which is the time it waited for the dispatch executor.
+     * Inline listeners aren't counted.
+     */
+    @Override
+    public HistogramSnapshot getDispatchLatency() {
+        return mDispatchLatency.snapshot();
+    }
+
+    /**
+     * Time from accepting a socket until its client was connected. Empty on a client.
+     */
+    @Override
+    public HistogramSnapshot getAcceptTime() {
+        return mAcceptTime.snapshot();
+    }
+
+    /**
+     * Time accepted sockets waited until they were set up, which grows when connections arrive faster than clients are created. Empty on a client.
+     */
+    @Override
+    public HistogramSnapshot getAcceptQueueTime() {
+        return mAcceptQueueTime.snapshot();
+    }
+
+    /**
+     * Round trip times of the pings of every connection. Empty while heartbeats are disabled.
+     */
+    @Override
+    public HistogramSnapshot getRoundTripTime() {
+        return mRoundTripTime.snapshot();
+    }
+
+    /**
+     * Supplies the open connections of a server or a client.
+     */
+    interface ConnectionSource {
+        Connection[] getConnections();
+    }
+}
@@ -0,0 +1,47 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link Metrics}. A server registers its metrics as {@code xyz.farhanfarooqui.JRocket:type=JRocketServer,port=<port>}
+ * while it's listening. Times are in nanoseconds.
+ */
+public interface MetricsMXBean {
+    long getMessagesReceived();
+
+    long getBytesReceived();
+
+    long getMessagesSent();
+
+    long getBytesSent();
+
+    long getEventsDropped();
+
+    long getConnectionsAccepted();
+
+    Map<String, Long> getConnectionsRejected();
+
+    int getConnections();
+
+    long getQueuedFrames();
+
+    int getMaxQueuedFrames();
+
+    long getQueuedBytes();
+
+    Map<String, Long> getDisconnects();
+
+    Map<String, EventMetrics> getEvents();
+
+    HistogramSnapshot getEncodeTime();
+
+    HistogramSnapshot getDecodeTime();
+
+    HistogramSnapshot getDispatchLatency();
+
+    HistogramSnapshot getAcceptTime();
+
+    HistogramSnapshot getAcceptQueueTime();
+
+    HistogramSnapshot getRoundTripTime();
+}
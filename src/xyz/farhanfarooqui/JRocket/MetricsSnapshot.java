@@ -0,0 +1,145 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.Map;
+
+/**
+ * Every value of {@link Metrics} at the moment {@link Metrics#snapshot()} was called. Rates are the difference of two
+ * snapshots divided by the time between them, see {@link #getTimestamp()}. Times are in nanoseconds.
+ */
+
+public final class MetricsSnapshot {
+    private final long mTimestamp;
+    private final long mMessagesReceived;
+    private final long mBytesReceived;
+    private final long mMessagesSent;
+    private final long mBytesSent;
+    private final long mEventsDropped;
+    private final long mConnectionsAccepted;
+    private final Map<String, Long> mConnectionsRejected;
+    private final int mConnections;
+    private final long mQueuedFrames;
+    private final int mMaxQueuedFrames;
+    private final long mQueuedBytes;
+    private final Map<String, Long> mDisconnects;
+    private final Map<String, EventMetrics> mEvents;
+    private final HistogramSnapshot mEncodeTime;
+    private final HistogramSnapshot mDecodeTime;
+    private final HistogramSnapshot mDispatchLatency;
+    private final HistogramSnapshot mAcceptTime;
+    private final HistogramSnapshot mAcceptQueueTime;
+    private final HistogramSnapshot mRoundTripTime;
+
+    MetricsSnapshot(Metrics metrics) {
+        mTimestamp = System.currentTimeMillis();
+        mMessagesReceived = metrics.getMessagesReceived();
+        mBytesReceived = metrics.getBytesReceived();
+        mMessagesSent = metrics.getMessagesSent();
+        mBytesSent = metrics.getBytesSent();
+        mEventsDropped = metrics.getEventsDropped();
+        mConnectionsAccepted = metrics.getConnectionsAccepted();
+        mConnectionsRejected = metrics.getConnectionsRejected();
+        mConnections = metrics.getConnections();
+        mQueuedFrames = metrics.getQueuedFrames();
+        mMaxQueuedFrames = metrics.getMaxQueuedFrames();
+        mQueuedBytes = metrics.getQueuedBytes();
+        mDisconnects = metrics.getDisconnects();
+        mEvents = metrics.getEvents();
+        mEncodeTime = metrics.getEncodeTime();
+        mDecodeTime = metrics.getDecodeTime();
+        mDispatchLatency = metrics.getDispatchLatency();
+        mAcceptTime = metrics.getAcceptTime();
+        mAcceptQueueTime = metrics.getAcceptQueueTime();
+        mRoundTripTime = metrics.getRoundTripTime();
+    }
+
+    /**
+     * When the snapshot was taken, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    public long getMessagesReceived() {
+        return mMessagesReceived;
+    }
+
+    public long getBytesReceived() {
+        return mBytesReceived;
+    }
+
+    public long getMessagesSent() {
+        return mMessagesSent;
+    }
+
+    public long getBytesSent() {
+        return mBytesSent;
+    }
+
+    public long getEventsDropped() {
+        return mEventsDropped;
+    }
+
+    public long getConnectionsAccepted() {
+        return mConnectionsAccepted;
+    }
+
+    public Map<String, Long> getConnectionsRejected() {
+        return mConnectionsRejected;
+    }
+
+    public int getConnections() {
+        return mConnections;
+    }
+
+    public long getQueuedFrames() {
+        return mQueuedFrames;
+    }
+
+    public int getMaxQueuedFrames() {
+        return mMaxQueuedFrames;
+    }
+
+    public long getQueuedBytes() {
+        return mQueuedBytes;
+    }
+
+    public Map<String, Long> getDisconnects() {
+        return mDisconnects;
+    }
+
+    public Map<String, EventMetrics> getEvents() {
+        return mEvents;
+    }
+
+    public HistogramSnapshot getEncodeTime() {
+        return mEncodeTime;
+    }
+
+    public HistogramSnapshot getDecodeTime() {
+        return mDecodeTime;
+    }
+
+    public HistogramSnapshot getDispatchLatency() {
+        return mDispatchLatency;
+    }
+
+    public HistogramSnapshot getAcceptTime() {
+        return mAcceptTime;
+    }
+
+    public HistogramSnapshot getAcceptQueueTime() {
+        return mAcceptQueueTime;
+    }
+
+    public HistogramSnapshot getRoundTripTime() {
+        return mRoundTripTime;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{messagesReceived=" + mMessagesReceived + ", bytesReceived=" + mBytesReceived + ", messagesSent=" + mMessagesSent
+                + ", bytesSent=" + mBytesSent + ", eventsDropped=" + mEventsDropped + ", connectionsAccepted=" + mConnectionsAccepted
+                + ", connectionsRejected=" + mConnectionsRejected + ", connections=" + mConnections + ", queuedFrames=" + mQueuedFrames
+                + ", maxQueuedFrames=" + mMaxQueuedFrames + ", disconnects=" + mDisconnects + ", dispatchLatency=" + mDispatchLatency + ", roundTripTime=" + mRoundTripTime + "}";
+    }
+}
@@ -0,0 +1,291 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * NioConnection moves the frames of one client over a non-blocking {@link SocketChannel}. All of the I/O happens on the
+ * connection's {@link EventLoop}, so no thread is held while the client is idle. It speaks the same protocol as
+ * {@link Communicator}, so blocking clients can connect to a server running on {@link Engine#NIO}.
+ */
+
+class NioConnection extends Connection {
+    private SocketChannel mChannel;
+    private EventLoop mEventLoop;
+    private SelectionKey mSelectionKey;
+    private ByteBuffer[] mBatch;
+    private int mBatchOffset;
+    private int mBatchLength;
+    private AtomicBoolean mFlushScheduled;
+    private FrameDecoder mFrameDecoder;
+    private ConnectListener mConnectListener;
+    private boolean hasRun = false;
+    private volatile boolean running;
+
+    private final Runnable mFlushTask = new Runnable() {
+        @Override
+        public void run() {
+            mFlushScheduled.set(false);
+            flush();
+        }
+    };
+
+    NioConnection(JRocket JRocket, SocketChannel channel, EventLoop eventLoop) throws IOException {
+        super(JRocket);
+        mChannel = channel;
+        mEventLoop = eventLoop;
+        mBatch = new ByteBuffer[1];
+        mFlushScheduled = new AtomicBoolean();
+        mFrameDecoder = new FrameDecoder(this);
+        mChannel.configureBlocking(false);
+        mChannel.socket().setTcpNoDelay(JRocket.getTcpNoDelay());
+    }
+
+    @Override
+    void start() {
+        if (!hasRun) {
+            hasRun = true;
+            running = true;
+            mEventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mSelectionKey = mEventLoop.register(mChannel, NioConnection.this);
+                        startIdleTimer();
+                        flush();
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        closeNow(DisconnectReason.IO_ERROR);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Connects the channel without blocking and starts the connection once it's connected. Used instead of {@link #start()}
+     * by clients.
+     */
+    void connect(final SocketAddress address, final ConnectListener connectListener) {
+        if (hasRun) {
+            return;
+        }
+        hasRun = true;
+        running = true;
+        mConnectListener = connectListener;
+        mEventLoop.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (mChannel.connect(address)) {
+                        mSelectionKey = mEventLoop.register(mChannel, NioConnection.this);
+                        onConnected();
+                    } else {
+                        mSelectionKey = mEventLoop.register(mChannel, NioConnection.this, SelectionKey.OP_CONNECT);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    closeNow(DisconnectReason.IO_ERROR);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called by the event loop when a pending connect has finished or failed.
+     */
+    void onConnectable() {
+        try {
+            if (!mChannel.finishConnect()) {
+                return;
+            }
+            mSelectionKey.interestOps(SelectionKey.OP_READ);
+            onConnected();
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeNow(DisconnectReason.IO_ERROR);
+        }
+    }
+
+    private void onConnected() {
+        ConnectListener connectListener = mConnectListener;
+        mConnectListener = null;
+        startIdleTimer();
+        connectListener.onConnect();
+        flush();
+    }
+
+    @Override
+    void close() {
+        setDisconnectReason(DisconnectReason.CLOSED);
+        if (mEventLoop.inEventLoop()) {
+            closeNow();
+        } else {
+            mEventLoop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    closeNow();
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules a flush on the event loop after a frame was queued, unless one is scheduled already.
+     */
+    @Override
+    void onFrameQueued() {
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            int maxWriteDelay = getJRocket().getMaxWriteDelay();
+            if (maxWriteDelay > 0) {
+                mEventLoop.schedule(mFlushTask, maxWriteDelay);
+            } else {
+                mEventLoop.execute(mFlushTask);
+            }
+        }
+    }
+
+    /**
+     * Event loops never wait for a full queue, they might be the ones which have to drain it.
+     */
+    @Override
+    boolean mayBlock() {
+        return !(Thread.currentThread() instanceof EventLoop);
+    }
+
+    /**
+     * Called by the event loop when the channel has bytes to read.
+     */
+    void onReadable() {
+        ByteBuffer buffer = mEventLoop.getReadBuffer();
+        try {
+            while (running) {
+                buffer.clear();
+                int read = mChannel.read(buffer);
+                if (read < 0) {
+                    setDisconnectReason(DisconnectReason.PEER_CLOSED);
+                    throw new IOException("Connection closed by peer");
+                }
+                if (read == 0) {
+                    break;
+                }
+                onBytesRead();
+                buffer.flip();
+                decode(mFrameDecoder, buffer);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeNow(DisconnectReason.IO_ERROR);
+        }
+    }
+
+    /**
+     * Called by the event loop when the channel can accept more bytes.
+     */
+    void onWritable() {
+        flush();
+    }
+
+    @Override
+    public void onFrame(byte flags, ByteBuffer body) throws IOException {
+        if (running) {
+            super.onFrame(flags, body);
+        }
+    }
+
+    /**
+     * Writes the queued frames with gathering writes of up to max write batch size bytes, until the queue is empty or the
+     * socket can't take more.
+     */
+    private void flush() {
+        if (!running || mSelectionKey == null || mConnectListener != null) {
+            return;
+        }
+        try {
+            while (true) {
+                if (mBatchOffset == mBatchLength && !collectBatch()) {
+                    mSelectionKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+                mChannel.write(mBatch, mBatchOffset, mBatchLength - mBatchOffset);
+                while (mBatchOffset < mBatchLength && !mBatch[mBatchOffset].hasRemaining()) {
+                    mBatch[mBatchOffset++] = null;
+                }
+                if (mBatchOffset < mBatchLength) {
+                    mSelectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            closeNow(DisconnectReason.IO_ERROR);
+        }
+    }
+
+    private boolean collectBatch() {
+        int maxBytes = getJRocket().getMaxWriteBatchSize();
+        int bytes = 0;
+        mBatchOffset = 0;
+        mBatchLength = 0;
+
+        Frame frame;
+        while ((mBatchLength == 0 || bytes < maxBytes) && (frame = mQueue.poll()) != null) {
+            if (mBatchLength == mBatch.length) {
+                mBatch = Arrays.copyOf(mBatch, mBatch.length * 2);
+            }
+            mBatch[mBatchLength++] = frame.buffer();
+            onFrameWritten(frame);
+            bytes += frame.length();
+        }
+        return mBatchLength > 0;
+    }
+
+    /**
+     * Closes the channel for the reason, unless it's already closing for another one. Must be called on the event loop.
+     */
+    void closeNow(DisconnectReason reason) {
+        setDisconnectReason(reason);
+        closeNow();
+    }
+
+    /**
+     * Closes the channel. Must be called on the event loop.
+     */
+    void closeNow() {
+        if (running) {
+            running = false;
+            stopIdleTimer();
+            if (mSelectionKey != null) {
+                mSelectionKey.cancel();
+            }
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mEventLoop.deregister(this);
+            closeQueue();
+            failPendingRequests();
+            Arrays.fill(mBatch, null);
+            mBatchOffset = mBatchLength = 0;
+            if (mConnectListener != null) {
+                ConnectListener connectListener = mConnectListener;
+                mConnectListener = null;
+                connectListener.onConnectFailed();
+            } else {
+                onClosed();
+            }
+        }
+    }
+
+    interface ConnectListener {
+        void onConnect();
+
+        void onConnectFailed();
+    }
+}
@@ -0,0 +1,344 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * OutboundQueue holds the frames which are waiting to be written to one connection. It can be bounded by a number of
+ * frames and by a number of bytes. When a frame doesn't fit, the {@link OverflowPolicy} decides what happens.
+ */
+
+class OutboundQueue {
+    private final int mMaxSize;
+    private final long mMaxBytes;
+    private final OverflowPolicy mOverflowPolicy;
+    private final ArrayDeque<Frame> mFrames;
+    private final ReentrantLock mLock;
+    private final Condition mNotEmpty;
+    private final Condition mNotFull;
+    private volatile int mSize;
+    private volatile long mBytes;
+    private volatile long mDropped;
+    private boolean mClosed;
+    private List<Frame> mUnsent;
+    private boolean mUnsentLost;
+
+    /**
+     * @param maxSize  Maximum number of queued frames, zero or less means no limit.
+     * @param maxBytes Maximum number of queued bytes, zero or less means no limit. A single frame which is larger than this is accepted if the queue is empty.
+     */
+    OutboundQueue(int maxSize, long maxBytes, OverflowPolicy overflowPolicy) {
+        mMaxSize = maxSize;
+        mMaxBytes = maxBytes;
+        mOverflowPolicy = overflowPolicy;
+        mFrames = new ArrayDeque<>();
+        mLock = new ReentrantLock();
+        mNotEmpty = mLock.newCondition();
+        mNotFull = mLock.newCondition();
+    }
+
+    /**
+     * Adds the frame to the queue, applying the overflow policy if the queue is full.
+     *
+     * @param mayBlock Whether the calling thread may wait for room with {@link OverflowPolicy#BLOCK}. If not, the frame is
+     *                 dropped and the connection has to be closed, like with {@link OverflowPolicy#DISCONNECT}.
+     * @return false if the queue is full and the frame can't be queued by the policy, so the connection must be closed.
+     */
+    boolean offer(Frame frame, boolean mayBlock) throws InterruptedException {
+        mLock.lock();
+        try {
+            if (mClosed) {
+                keep(frame);
+                return true;
+            }
+            if (isFull(frame)) {
+                switch (mOverflowPolicy) {
+                    case BLOCK:
+                        if (!mayBlock) {
+                            mDropped++;
+                            return false;
+                        }
+                        while (!mClosed && isFull(frame)) {
+                            mNotFull.await();
+                        }
+                        if (mClosed) {
+                            keep(frame);
+                            return true;
+                        }
+                        break;
+                    case DROP_NEWEST:
+                        mDropped++;
+                        return true;
+                    case DROP_OLDEST:
+                        while (isFull(frame)) {
+                            remove(mFrames.pollFirst());
+                            mDropped++;
+                        }
+                        break;
+                    case DISCONNECT:
+                        return false;
+                    case CONFLATE:
+                        mDropped++;
+                        Frame replaced = findOldest(frame.getEvent());
+                        if (replaced == null || !fitsInstead(replaced, frame)) {
+                            return true;
+                        }
+                        mFrames.remove(replaced);
+                        remove(replaced);
+                        break;
+                }
+            }
+            mFrames.addLast(frame);
+            mSize++;
+            mBytes += frame.length();
+            mNotEmpty.signal();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Adds a frame which is replayed to a resumed session. With {@link OverflowPolicy#BLOCK} it's added even if the queue is
+     * full, since the caller can't wait and the replayed frames are bounded by the size of the session. Other policies apply
+     * like with {@link #offer(Frame, boolean)}.
+     *
+     * @return false if the connection must be closed.
+     */
+    boolean offerReplayed(Frame frame) throws InterruptedException {
+        if (mOverflowPolicy != OverflowPolicy.BLOCK) {
+            return offer(frame, false);
+        }
+        mLock.lock();
+        try {
+            if (mClosed) {
+                keep(frame);
+                return true;
+            }
+            mFrames.addLast(frame);
+            mSize++;
+            mBytes += frame.length();
+            mNotEmpty.signal();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Whether a sender which may block has to wait before offering the frame, see {@link #awaitRoom(Frame)}.
+     */
+    boolean mustWait(Frame frame) {
+        mLock.lock();
+        try {
+            return mOverflowPolicy == OverflowPolicy.BLOCK && !mClosed && isFull(frame);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Waits until there is room for the frame, if the policy is {@link OverflowPolicy#BLOCK}. The frame isn't added, so it
+     * can be offered afterwards without waiting while a lock is held.
+     */
+    void awaitRoom(Frame frame) throws InterruptedException {
+        mLock.lock();
+        try {
+            while (mOverflowPolicy == OverflowPolicy.BLOCK && !mClosed && isFull(frame)) {
+                mNotFull.await();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the frame only if there is room for it. Used for control frames, which must neither wait nor push out events.
+     *
+     * @return Whether the frame was added.
+     */
+    boolean offerIfRoom(Frame frame) {
+        mLock.lock();
+        try {
+            if (mClosed || isFull(frame)) {
+                return false;
+            }
+            mFrames.addLast(frame);
+            mSize++;
+            mBytes += frame.length();
+            mNotEmpty.signal();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of the queue, or returns null if the queue is empty.
+     */
+    Frame poll() {
+        mLock.lock();
+        try {
+            return remove(mFrames.pollFirst());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of the queue, waiting up to the timeout for a frame to arrive.
+     */
+    Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        mLock.lock();
+        try {
+            while (mFrames.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = mNotEmpty.awaitNanos(nanos);
+            }
+            return remove(mFrames.pollFirst());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Retrieves and removes the head of the queue, waiting for a frame to arrive. Returns null once the queue is closed.
+     */
+    Frame take() throws InterruptedException {
+        mLock.lock();
+        try {
+            while (mFrames.isEmpty() && !mClosed) {
+                mNotEmpty.await();
+            }
+            return remove(mFrames.pollFirst());
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    /**
+     * Number of queued frames.
+     */
+    int size() {
+        return mSize;
+    }
+
+    /**
+     * Number of queued bytes.
+     */
+    long bytes() {
+        return mBytes;
+    }
+
+    /**
+     * Number of frames which were dropped by the overflow policy.
+     */
+    long dropped() {
+        return mDropped;
+    }
+
+    /**
+     * Discards the queued frames. Frames which are offered afterwards are discarded as well and waiting threads are released.
+     */
+    void close() {
+        close(false);
+    }
+
+    /**
+     * Closes the queue like {@link #close()}.
+     *
+     * @param keepUnsent Whether the queued frames, and the ones which are offered afterwards, are kept for {@link #unsent()}
+     *                   instead of being discarded. At most as many frames as fit in the queue are kept.
+     */
+    void close(boolean keepUnsent) {
+        mLock.lock();
+        try {
+            if (keepUnsent && !mClosed) {
+                mUnsent = new ArrayList<>(mFrames);
+            }
+            mClosed = true;
+            mFrames.clear();
+            mSize = 0;
+            mBytes = 0;
+            mNotFull.signalAll();
+            mNotEmpty.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private boolean isFull(Frame frame) {
+        if (mMaxSize > 0 && mSize >= mMaxSize) {
+            return true;
+        }
+        return mMaxBytes > 0 && mSize > 0 && mBytes + frame.length() > mMaxBytes;
+    }
+
+    /**
+     * Whether the frame fits once the other one was removed.
+     */
+    private boolean fitsInstead(Frame replaced, Frame frame) {
+        return mMaxBytes <= 0 || mSize == 1 || mBytes - replaced.length() + frame.length() <= mMaxBytes;
+    }
+
+    private Frame findOldest(String event) {
+        if (event == null) {
+            return null;
+        }
+        for (Frame frame : mFrames) {
+            if (event.equals(frame.getEvent())) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    private Frame remove(Frame frame) {
+        if (frame != null) {
+            mSize--;
+            mBytes -= frame.length();
+            mNotFull.signalAll();
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the frames which were kept when the queue was closed, see {@link #close(boolean)}.
+     *
+     * @return The frames, or null if some of them had to be dropped.
+     */
+    List<Frame> unsent() {
+        mLock.lock();
+        try {
+            if (mUnsentLost) {
+                return null;
+            }
+            return mUnsent != null ? new ArrayList<>(mUnsent) : new ArrayList<Frame>();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    private void keep(Frame frame) {
+        if (mUnsent == null) {
+            return;
+        }
+        if (mMaxSize > 0 && mUnsent.size() >= mMaxSize) {
+            mUnsent = null;
+            mUnsentLost = true;
+            return;
+        }
+        mUnsent.add(frame);
+    }
+}
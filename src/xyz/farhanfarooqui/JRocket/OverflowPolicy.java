@@ -0,0 +1,34 @@
+package xyz.farhanfarooqui.JRocket;
+
+/**
+ * Decides what happens when an event is sent to a client whose outbound queue is full, e.g. because the client reads
+ * slower than the server sends.
+ */
+public enum OverflowPolicy {
+    /**
+     * The sending thread waits until the queue has room. Threads which must not wait, like the event loop threads of
+     * {@link Engine#NIO} and the threads of a broadcast, disconnect the client instead, and the event is counted as dropped.
+     */
+    BLOCK,
+
+    /**
+     * The new event is dropped.
+     */
+    DROP_NEWEST,
+
+    /**
+     * The oldest queued events are dropped to make room for the new event.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The client is disconnected.
+     */
+    DISCONNECT,
+
+    /**
+     * The oldest queued event with the same name is replaced by the new event, so the client only receives the latest one. If no event with the same name
+     * is queued, the new event is dropped.
+     */
+    CONFLATE
+}
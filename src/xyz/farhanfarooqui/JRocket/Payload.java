@@ -0,0 +1,72 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Payload is the still encoded data of a received event. Register a listener for {@code Payload.class} to get it instead
+ * of the decoded data, it's only decoded when {@link #get(Class)} is called. A payload can be sent again with
+ * {@code send(event, payload)} and {@code broadCast(event, payload)}, its bytes are then forwarded as they are without
+ * being decoded or encoded again.
+ */
+
+public final class Payload {
+    private final byte[] mBytes;
+    private final PayloadCodec mPayloadCodec;
+    private Object mDecoded;
+
+    Payload(byte[] bytes, PayloadCodec payloadCodec) {
+        mBytes = bytes;
+        mPayloadCodec = payloadCodec;
+    }
+
+    /**
+     * Decodes the payload into the type. The result is cached, so decoding to the same type again is free.
+     *
+     * @param type {@link JSONObject} or the class of the object to create.
+     */
+    public synchronized <T> T get(Class<T> type) throws IOException {
+        if (type.isInstance(mDecoded)) {
+            return type.cast(mDecoded);
+        }
+        T data = mPayloadCodec.decode(ByteBuffer.wrap(mBytes), type);
+        mDecoded = data;
+        return data;
+    }
+
+    /**
+     * Decodes the payload into a {@link JSONObject}.
+     */
+    public JSONObject getJSONObject() throws IOException {
+        return get(JSONObject.class);
+    }
+
+    /**
+     * Returns a copy of the encoded bytes.
+     */
+    public byte[] getBytes() {
+        return mBytes.clone();
+    }
+
+    /**
+     * Returns the size of the encoded payload in bytes.
+     */
+    public int length() {
+        return mBytes.length;
+    }
+
+    byte[] array() {
+        return mBytes;
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer, which is only valid while the frame is being read.
+     */
+    static Payload copyOf(ByteBuffer payload, PayloadCodec payloadCodec) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new Payload(bytes, payloadCodec);
+    }
+}
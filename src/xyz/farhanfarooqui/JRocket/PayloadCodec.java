@@ -0,0 +1,31 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PayloadCodec converts the data payload of an event to and from bytes. The server and its clients must use the same
+ * codec. Set it with {@link JRocketServer#setPayloadCodec(PayloadCodec)} and {@link JRocketClient#setPayloadCodec(PayloadCodec)}.
+ * <br>
+ * Implementations must be thread-safe, a single codec is used by every connection at the same time.
+ *
+ * @see JsonPayloadCodec
+ * @see BinaryPayloadCodec
+ */
+public interface PayloadCodec {
+
+    /**
+     * Encodes the payload.
+     *
+     * @param data A {@link org.json.JSONObject} or any object the codec knows how to convert.
+     */
+    byte[] encode(Object data) throws IOException;
+
+    /**
+     * Decodes a payload which was encoded by {@link #encode(Object)}.
+     *
+     * @param payload The encoded payload. Only valid until this method returns.
+     * @param type    {@link org.json.JSONObject} or the class of the object to create.
+     */
+    <T> T decode(ByteBuffer payload, Class<T> type) throws IOException;
+}
@@ -0,0 +1,139 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PendingRequests holds the requests of a connection which are waiting for their response, by correlation id. Timeouts
+ * are scheduled on the shared {@link HashedWheelTimer}, so any number of requests can be in flight without a thread
+ * waiting for each of them. Futures are completed on the executor, so callbacks never run on an I/O thread.
+ */
+
+final class PendingRequests {
+    private final ConcurrentHashMap<Long, Request<?>> mRequests = new ConcurrentHashMap<>();
+    private final AtomicLong mNextId = new AtomicLong();
+    private volatile Executor mExecutor;
+    private volatile boolean mClosed;
+
+    void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Registers a new request.
+     *
+     * @param timeoutMillis Time after which the future fails with a {@link TimeoutException}. Zero means no timeout.
+     */
+    <T> Request<T> add(Class<T> type, long timeoutMillis) {
+        return add(type, timeoutMillis, false);
+    }
+
+    /**
+     * Registers a new request.
+     *
+     * @param inline If true, the future is completed directly on the thread which read the response, failed the request or closed the connection.
+     */
+    <T> Request<T> add(Class<T> type, long timeoutMillis, boolean inline) {
+        final Request<T> request = new Request<>(mNextId.incrementAndGet(), type, inline);
+        mRequests.put(request.mId, request);
+        if (mClosed) {
+            fail(request.mId, new IOException("Connection closed"));
+            return request;
+        }
+        if (timeoutMillis > 0) {
+            request.mTimeout = HashedWheelTimer.shared().newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    fail(request.mId, new TimeoutException("No response within " + timeoutMillis + " ms"));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return request;
+    }
+
+    /**
+     * Removes the request which is answered by a response, or returns null if it already timed out.
+     */
+    Request<?> remove(long id) {
+        Request<?> request = mRequests.remove(id);
+        if (request != null && request.mTimeout != null) {
+            request.mTimeout.cancel();
+        }
+        return request;
+    }
+
+    void fail(long id, Throwable cause) {
+        Request<?> request = remove(id);
+        if (request != null) {
+            request.fail(cause);
+        }
+    }
+
+    /**
+     * Fails every pending request and every request which is added afterwards. Called when the connection is closed.
+     */
+    void close() {
+        mClosed = true;
+        for (Long id : mRequests.keySet()) {
+            fail(id, new IOException("Connection closed"));
+        }
+    }
+
+    final class Request<T> {
+        private final long mId;
+        private final Class<T> mType;
+        private final boolean mInline;
+        private final CompletableFuture<T> mFuture = new CompletableFuture<>();
+        private volatile HashedWheelTimer.Timeout mTimeout;
+
+        private Request(long id, Class<T> type, boolean inline) {
+            mId = id;
+            mType = type;
+            mInline = inline;
+        }
+
+        long getId() {
+            return mId;
+        }
+
+        Class<T> getType() {
+            return mType;
+        }
+
+        CompletableFuture<T> getFuture() {
+            return mFuture;
+        }
+
+        void complete(final Object data) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    mFuture.complete(mType.cast(data));
+                }
+            });
+        }
+
+        void fail(final Throwable cause) {
+            execute(new Runnable() {
+                @Override
+                public void run() {
+                    mFuture.completeExceptionally(cause);
+                }
+            });
+        }
+
+        private void execute(Runnable runnable) {
+            Executor executor = mExecutor;
+            if (executor != null && !mInline) {
+                executor.execute(runnable);
+            } else {
+                runnable.run();
+            }
+        }
+    }
+}
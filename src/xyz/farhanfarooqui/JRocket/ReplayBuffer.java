@@ -0,0 +1,67 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReplayBuffer keeps the last events which were written to the client of a session, so the ones it missed can be sent
+ * again when it resumes the session. Events are numbered in the order they were written, and the client tells how many
+ * it received, so nothing has to be acknowledged while the connection is up.
+ * <br>
+ * The frames are kept as they were written, with the event ids the client announced. The same {@link JRocketClient}
+ * resumes the session, so the ids are still valid.
+ */
+
+final class ReplayBuffer {
+    private final Frame[] mFrames;
+    private long mWritten;
+    private Connection mConnection;
+
+    /**
+     * @param size Number of events which are kept.
+     */
+    ReplayBuffer(int size) {
+        mFrames = new Frame[Math.max(size, 1)];
+    }
+
+    /**
+     * Records an event which was written to the connection. Events of a connection the session was moved away from are ignored.
+     */
+    synchronized void add(Connection connection, Frame frame) {
+        if (connection != mConnection) {
+            return;
+        }
+        mFrames[(int) (mWritten % mFrames.length)] = frame;
+        mWritten++;
+    }
+
+    /**
+     * Whether every event the client didn't receive is still kept.
+     *
+     * @param received Number of events the client received.
+     */
+    synchronized boolean covers(long received) {
+        return received >= 0 && received <= mWritten && received >= mWritten - mFrames.length;
+    }
+
+    /**
+     * Moves the session to the connection and returns the events the client didn't receive. They are recorded again once they
+     * are written to the new connection.
+     *
+     * @param received Number of events the client received.
+     * @return The missed events, or null if some of them aren't kept anymore or the client claims more than was written.
+     */
+    synchronized List<Frame> attach(Connection connection, long received) {
+        if (!covers(received)) {
+            return null;
+        }
+        List<Frame> frames = new ArrayList<>((int) (mWritten - received));
+        for (long i = received; i < mWritten; i++) {
+            frames.add(mFrames[(int) (i % mFrames.length)]);
+        }
+        mWritten = received;
+        mConnection = connection;
+        connection.setReplayBuffer(this);
+        return frames;
+    }
+}
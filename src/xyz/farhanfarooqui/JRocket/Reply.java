@@ -0,0 +1,51 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reply answers a request which was sent with {@code request(event, data, timeout)}. It's passed to the listeners which
+ * were registered with {@code onRequest}. A reply can be sent later and from any thread, e.g. once an asynchronous
+ * operation has finished, but only the first one is sent.
+ */
+
+public final class Reply {
+    /**
+     * Passed to request listeners which are called for an event which isn't a request, there is nobody to answer.
+     */
+    static final Reply NONE = new Reply(null, -1);
+
+    private final Connection mConnection;
+    private final long mCorrelationId;
+    private final AtomicBoolean mSent;
+
+    Reply(Connection connection, long correlationId) {
+        mConnection = connection;
+        mCorrelationId = correlationId;
+        mSent = new AtomicBoolean(connection == null);
+    }
+
+    /**
+     * Sends the response. Its data is converted by the {@link PayloadCodec}, just like the data of events.
+     *
+     * @return False if a response was sent already.
+     */
+    public boolean send(Object data) {
+        if (!mSent.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            mConnection.send(FrameCodec.encodeResponse(mCorrelationId, data, mConnection.getJRocket()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if a response was sent already.
+     */
+    public boolean isSent() {
+        return mSent.get();
+    }
+}
@@ -0,0 +1,94 @@
+package xyz.farhanfarooqui.JRocket;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A named group of clients. Clients join and leave rooms with {@link Client#join(String)} and {@link Client#leave(String)},
+ * and leave all of their rooms when they disconnect. Get a room with {@link JRocketServer#to(String)}.
+ * <br>
+ * A room is only a name on the server, so it can be kept and used while clients come and go. Every call looks up the clients
+ * which are in the room at that time. Sending to a room only touches the clients of the room, no matter how many clients are
+ * connected to the server.
+ */
+public class Room {
+    private String mName;
+    private JRocketServer mRocketServer;
+
+    Room(String name, JRocketServer rocketServer) {
+        mName = name;
+        mRocketServer = rocketServer;
+    }
+
+    /**
+     * @return Name of the room.
+     */
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Sends an event to every client of the room.
+     *
+     * @param event The event which will be sent to the clients.
+     * @param data  The data payload which will be sent to the clients. Payloads must be stored in JSON format.
+     * @return Completes with the number of clients the event was queued on, see {@link JRocketServer#send(String, JSONObject)}.
+     */
+    public CompletableFuture<Integer> send(String event, JSONObject data) {
+        return broadCast(event, data, null);
+    }
+
+    /**
+     * Sends an event to every client of the room.
+     *
+     * @param event The event which will be sent to the clients.
+     * @param data  The data payload which will be sent to the clients. It's converted by the server's {@link PayloadCodec}.
+     * @return Completes with the number of clients the event was queued on.
+     */
+    public CompletableFuture<Integer> send(String event, Object data) {
+        return broadCast(event, data, null);
+    }
+
+    /**
+     * Sends an event to every client of the room except the given client.
+     *
+     * @param event  The event which will be sent to the clients.
+     * @param data   The data payload which will be sent to the clients. Payloads must be stored in JSON format.
+     * @param client The client which won't receive the event, usually the one who sent it.
+     * @return Completes with the number of clients the event was queued on.
+     */
+    public CompletableFuture<Integer> broadCast(String event, JSONObject data, Client client) {
+        return broadCast(event, (Object) data, client);
+    }
+
+    /**
+     * Sends an event to every client of the room except the given client.
+     *
+     * @param event  The event which will be sent to the clients.
+     * @param data   The data payload which will be sent to the clients. It's converted by the server's {@link PayloadCodec}.
+     * @param client The client which won't receive the event, usually the one who sent it.
+     * @return Completes with the number of clients the event was queued on.
+     */
+    public CompletableFuture<Integer> broadCast(String event, Object data, Client client) {
+        return mRocketServer.publish(mName, event, data, client);
+    }
+
+    /**
+     * Returns an ArrayList containing the clients of the room. The list is a copy.
+     */
+    public ArrayList<Client> clients() {
+        ClientRegistry clients = mRocketServer.members(mName);
+        return clients != null ? new ArrayList<>(Arrays.asList(clients.snapshot())) : new ArrayList<Client>();
+    }
+
+    /**
+     * Returns the number of clients in the room
+     */
+    public int getClientCount() {
+        ClientRegistry clients = mRocketServer.members(mName);
+        return clients != null ? clients.size() : 0;
+    }
+}
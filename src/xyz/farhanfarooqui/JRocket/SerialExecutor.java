@@ -0,0 +1,73 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SerialExecutor runs its tasks one at a time, in the order they were submitted, on an underlying executor which may
+ * have any number of threads. Every connection dispatches its events through its own SerialExecutor, so the events of a
+ * connection are handled in order while different connections are handled in parallel.
+ */
+
+class SerialExecutor implements Executor {
+    /**
+     * Maximum number of tasks which are run before the thread is handed back to the underlying executor, so a busy
+     * connection can't starve the others.
+     */
+    private static final int MAX_TASKS_PER_RUN = 64;
+
+    private final Executor mExecutor;
+    private final ConcurrentLinkedQueue<Runnable> mTasks;
+    private final AtomicBoolean mScheduled;
+
+    private final Runnable mRunTasks = new Runnable() {
+        @Override
+        public void run() {
+            runTasks();
+        }
+    };
+
+    SerialExecutor(Executor executor) {
+        mExecutor = executor;
+        mTasks = new ConcurrentLinkedQueue<>();
+        mScheduled = new AtomicBoolean();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        mTasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(mRunTasks);
+            } catch (RejectedExecutionException e) {
+                mScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void runTasks() {
+        try {
+            Runnable task;
+            int n = 0;
+            while (n++ < MAX_TASKS_PER_RUN && (task = mTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            mScheduled.set(false);
+            if (!mTasks.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package xyz.farhanfarooqui.JRocket.ServerListeners;
+
+import xyz.farhanfarooqui.JRocket.Client;
+
+public interface OnReceiveObjectListener<T> {
+    void onReceive(T data, Client client);
+}
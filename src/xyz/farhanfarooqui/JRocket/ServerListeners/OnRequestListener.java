@@ -0,0 +1,9 @@
+package xyz.farhanfarooqui.JRocket.ServerListeners;
+
+import org.json.JSONObject;
+import xyz.farhanfarooqui.JRocket.Client;
+import xyz.farhanfarooqui.JRocket.Reply;
+
+public interface OnRequestListener {
+    void onRequest(JSONObject data, Client client, Reply reply);
+}
@@ -0,0 +1,211 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Session keeps a {@link Client} alive for a while after its connection was lost, so the {@link JRocketClient} can
+ * reconnect and resume it with the token it was given. Meanwhile the client is parked: it stays in its rooms, and the
+ * events which are sent to it are held. When it resumes, it gets the events it missed from the {@link ReplayBuffer} and
+ * then the held ones. See {@link JRocketServer#setSessionTimeout(int)}.
+ */
+
+final class Session {
+    /**
+     * Request which a {@link JRocketClient} sends first on every connection, with its token if it has one.
+     */
+    static final String HELLO = "$session.hello";
+    /**
+     * Request which a {@link JRocketClient} sends when it disconnects on purpose, so its session isn't kept.
+     */
+    static final String END = "$session.end";
+
+    private static final SecureRandom sRandom = new SecureRandom();
+
+    private final String mToken;
+    private final Client mClient;
+    private final ReplayBuffer mReplayBuffer;
+    private final int mMaxHeld;
+    private final List<Frame> mHeld = new ArrayList<>();
+    private boolean mParked;
+    private boolean mEnded;
+    private boolean mOverflowed;
+    /**
+     * The queue of the connection overflowed and it's closing, events are held until the session is parked.
+     */
+    private boolean mClosing;
+    private HashedWheelTimer.Timeout mExpiry;
+
+    enum Resumption {
+        RESUMED,
+        /**
+         * The old connection still seemed to be open, or the new one closed meanwhile. The client has to try again.
+         */
+        RETRY,
+        FAILED
+    }
+
+    /**
+     * @param size Number of events which are kept for replay, and held while the session is parked.
+     */
+    Session(Client client, int size) {
+        byte[] token = new byte[16];
+        sRandom.nextBytes(token);
+        mToken = Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        mClient = client;
+        mReplayBuffer = new ReplayBuffer(size);
+        mMaxHeld = Math.max(size, 1);
+        mReplayBuffer.attach(client.getConnection(), 0);
+    }
+
+    String getToken() {
+        return mToken;
+    }
+
+    Client getClient() {
+        return mClient;
+    }
+
+    synchronized boolean isParked() {
+        return mParked;
+    }
+
+    /**
+     * Parks the session after its connection was lost.
+     *
+     * @param expiry Runs after the timeout unless the session was resumed.
+     * @return False if the session was ended, so the client has to be disconnected.
+     */
+    synchronized boolean park(Runnable expiry, long timeoutMillis) {
+        if (mEnded) {
+            return false;
+        }
+        if (mParked) {
+            return true;
+        }
+        mParked = true;
+        mClosing = false;
+        mExpiry = HashedWheelTimer.shared().newTimeout(expiry, timeoutMillis, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    /**
+     * Sends a frame to the client. While the session is parked, events are held and other frames are dropped, the new
+     * connection gets them again. Once too many events are held, the session can't be resumed anymore.
+     * <br>
+     * The frame is queued while the session is locked, so it can't reach a connection after the session was parked or
+     * moved away from it. Waiting for room in the queue happens before, nothing blocks while the session is locked. If the
+     * queue overflows, the frame is held like on a parked session while the connection closes.
+     */
+    void send(Frame frame) {
+        send(frame, true);
+    }
+
+    /**
+     * Sends a frame like {@link #send(Frame)}.
+     *
+     * @param mayBlock Whether the calling thread may wait for room in the queue, if the connection allows it.
+     */
+    void send(Frame frame, boolean mayBlock) {
+        Connection connection = mClient.getConnection();
+        while (true) {
+            if (mayBlock) {
+                connection.awaitRoom(frame);
+            }
+            synchronized (this) {
+                if (mParked || mClosing) {
+                    hold(frame);
+                    return;
+                }
+                connection = mClient.getConnection();
+                if (!mayBlock || !connection.mustWait(frame)) {
+                    if (connection.queue(frame, false)) {
+                        return;
+                    }
+                    mClosing = true;
+                    hold(frame);
+                    break;
+                }
+            }
+        }
+        connection.close(DisconnectReason.QUEUE_OVERFLOW);
+    }
+
+    private void hold(Frame frame) {
+        if (!frame.isEvent()) {
+            return;
+        }
+        if (mHeld.size() < mMaxHeld) {
+            mHeld.add(frame);
+        } else {
+            mOverflowed = true;
+            mHeld.clear();
+        }
+    }
+
+    /**
+     * Moves the parked session to the connection of the client which just said hello and sends the events it missed. They never
+     * wait for room in the queue, so nothing blocks while the session is locked.
+     *
+     * @param hello    The client of the new connection, which is dropped in favour of the client of the session.
+     * @param received Number of events the client received during the session.
+     * @param response Sent with the reply before the events.
+     */
+    synchronized Resumption resume(Client hello, long received, Reply reply, Object response) {
+        if (mEnded) {
+            return Resumption.FAILED;
+        }
+        if (!mParked) {
+            return Resumption.RETRY;
+        }
+        if (mOverflowed || !mReplayBuffer.covers(received)) {
+            return Resumption.FAILED;
+        }
+        Connection previous = mClient.getConnection();
+        List<Frame> unsent = previous.getUnsent();
+        if (unsent == null) {
+            return Resumption.FAILED;
+        }
+        Connection connection = hello.getConnection();
+        if (!mClient.adopt(connection, hello.getInetAddress())) {
+            return Resumption.RETRY;
+        }
+        List<Frame> missed = mReplayBuffer.attach(connection, received);
+        mParked = false;
+        mExpiry.cancel();
+        reply.send(response);
+        for (Frame frame : missed) {
+            connection.replay(frame);
+        }
+        for (Frame frame : unsent) {
+            if (frame.isEvent()) {
+                connection.replay(frame);
+            }
+        }
+        for (Frame frame : mHeld) {
+            connection.replay(frame);
+        }
+        mHeld.clear();
+        return Resumption.RESUMED;
+    }
+
+    /**
+     * Ends the session, so it can't be resumed anymore.
+     *
+     * @return Whether it was parked, so the client has to be disconnected now.
+     */
+    synchronized boolean end() {
+        boolean parked = mParked && !mEnded;
+        mEnded = true;
+        mParked = false;
+        mClosing = false;
+        mHeld.clear();
+        if (mExpiry != null) {
+            mExpiry.cancel();
+        }
+        return parked;
+    }
+}
@@ -1,5 +1,14 @@
 package xyz.farhanfarooqui.JRocket;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.ServerSocket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 class Utils {
@@ -8,4 +17,76 @@ class Utils {
     public static String createID() {
         return String.valueOf(idCounter.getAndIncrement());
     }
+
+    /**
+     * Creates an executor which starts a new virtual thread for each task. Falls back to a cached thread pool if the runtime does not support virtual
+     * threads, which never rejects a task either.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Returns {@code StandardSocketOptions.SO_REUSEPORT}, or null if the runtime is older than Java 9.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePortOption() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Enables SO_REUSEPORT on a socket which isn't bound yet, so several sockets can listen on the same port and the kernel spreads the
+     * connections over them. Does nothing if the runtime or the platform doesn't support it.
+     */
+    static void setReusePort(ServerSocket serverSocket) throws IOException {
+        SocketOption<Boolean> option = reusePortOption();
+        if (option == null) {
+            return;
+        }
+        ServerSocketChannel channel = serverSocket.getChannel();
+        if (channel != null) {
+            if (channel.supportedOptions().contains(option)) {
+                channel.setOption(option, true);
+            }
+            return;
+        }
+        try {
+            Set<?> options = (Set<?>) ServerSocket.class.getMethod("supportedOptions").invoke(serverSocket);
+            if (options.contains(option)) {
+                ServerSocket.class.getMethod("setOption", SocketOption.class, Object.class).invoke(serverSocket, option, true);
+            }
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // Java 8 has neither, and no SO_REUSEPORT either
+        } catch (InvocationTargetException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Whether SO_REUSEPORT is enabled on the socket.
+     */
+    static boolean isReusePort(ServerSocket serverSocket) {
+        SocketOption<Boolean> option = reusePortOption();
+        if (option == null) {
+            return false;
+        }
+        try {
+            ServerSocketChannel channel = serverSocket.getChannel();
+            if (channel != null) {
+                return channel.supportedOptions().contains(option) && channel.getOption(option);
+            }
+            Set<?> options = (Set<?>) ServerSocket.class.getMethod("supportedOptions").invoke(serverSocket);
+            return options.contains(option) && (Boolean) ServerSocket.class.getMethod("getOption", SocketOption.class).invoke(serverSocket, option);
+        } catch (IOException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            return false;
+        }
+    }
 }
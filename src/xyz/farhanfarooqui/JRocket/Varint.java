@@ -0,0 +1,70 @@
+package xyz.farhanfarooqui.JRocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes unsigned variable-length integers, 7 bits per byte with the high bit set on every byte but the last.
+ * Small numbers, like the lengths of event names, take a single byte.
+ */
+
+final class Varint {
+    private static final int MAX_SIZE = 10;
+
+    private Varint() {
+    }
+
+    /**
+     * Number of bytes the value takes.
+     */
+    static int size(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void write(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long read(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int i = 0; i < MAX_SIZE; i++) {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a varint which must fit into a non-negative int, e.g. a length.
+     */
+    static int readInt(ByteBuffer buffer) throws IOException {
+        long value = read(buffer);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Varint out of range " + value);
+        }
+        return (int) value;
+    }
+
+    static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}